@@ -0,0 +1,56 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.security.credential.Credential;
+import uk.gov.ida.saml.security.AssertionDecrypter;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssertionDecryptionBenchmark {
+
+    private ValidatedResponse validatedResponse;
+    private List<Credential> decryptingCredentials;
+    private AssertionDecrypter sharedAssertionDecrypter;
+
+    @Setup
+    public void setUp() {
+        validatedResponse = new ValidatedResponse(SamlFixtures.idpResponse());
+        decryptingCredentials = new IdaKeyStoreCredentialRetriever(SamlFixtures.hubKeyStore()).getDecryptingCredentials();
+        sharedAssertionDecrypter = newAssertionDecrypter();
+    }
+
+    @Benchmark
+    public List<Assertion> sharedDecrypter() {
+        return sharedAssertionDecrypter.decryptAssertions(validatedResponse);
+    }
+
+    @Benchmark
+    public List<Assertion> decrypterPerMessage() {
+        return newAssertionDecrypter().decryptAssertions(validatedResponse);
+    }
+
+    private AssertionDecrypter newAssertionDecrypter() {
+        return new AssertionDecrypter(new EncryptionAlgorithmValidator(), new DecrypterFactory().createDecrypter(decryptingCredentials));
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.ida.saml.benchmarks;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ida.saml.deserializers.validators.Base64ByteDecoder;
+import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the base64 decoders over inputs the size of a typical AuthnRequest (2 KB) and of the
+ * largest Response we accept (50 KB), encoded in 76 character lines as they arrive in a POST body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base64DecoderBenchmark {
+
+    @Param({"2048", "51200"})
+    private int decodedSize;
+
+    private String encoded;
+    private final RegexBase64StringDecoder regexDecoder = new RegexBase64StringDecoder();
+    private final Base64StringDecoder stringDecoder = new Base64StringDecoder();
+    private Base64ByteDecoder byteDecoder;
+
+    @Setup
+    public void setUp() {
+        encoded = Base64Support.encode(SamlPayloads.xmlOfSize(decodedSize).getBytes(StandardCharsets.UTF_8), Base64Support.CHUNKED);
+        byteDecoder = new Base64ByteDecoder(decodedSize);
+    }
+
+    @Benchmark
+    public String regexStringDecoder() {
+        return regexDecoder.decode(encoded);
+    }
+
+    @Benchmark
+    public String singlePassStringDecoder() {
+        return stringDecoder.decode(encoded);
+    }
+
+    @Benchmark
+    public ByteBuffer singlePassByteDecoder() {
+        return byteDecoder.decode(encoded);
+    }
+}
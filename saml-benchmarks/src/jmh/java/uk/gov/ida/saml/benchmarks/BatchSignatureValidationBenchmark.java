@@ -0,0 +1,94 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import uk.gov.ida.saml.core.validation.SamlValidationResponse;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+import uk.gov.ida.saml.security.MetadataBackedSignatureValidator;
+import uk.gov.ida.saml.security.SamlMessageSignatureValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating an archive of stored responses one message at a time against validating it as a batch, which
+ * resolves each issuer's credentials once and then verifies the signatures on the calling thread or a pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSignatureValidationBenchmark {
+
+    @Param({"32"})
+    private int messages;
+
+    private List<Response> responses;
+    private SamlMessageSignatureValidator validator;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        responses = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            responses.add(SamlFixtures.idpResponse());
+        }
+        validator = new SamlMessageSignatureValidator(
+                MetadataBackedSignatureValidator.withoutCertificateChainValidation(
+                        new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(SamlFixtures.federationMetadataResolver())));
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        requireValid(oneAtATime());
+        requireValid(batchOnCallingThread());
+        requireValid(batchOnPool());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public List<SamlValidationResponse> oneAtATime() {
+        List<SamlValidationResponse> validationResponses = new ArrayList<>(responses.size());
+        for (Response response : responses) {
+            validationResponses.add(validator.validate(response, IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        }
+        return validationResponses;
+    }
+
+    @Benchmark
+    public List<SamlValidationResponse> batchOnCallingThread() {
+        return validator.validateAll(responses, IDPSSODescriptor.DEFAULT_ELEMENT_NAME, Runnable::run);
+    }
+
+    @Benchmark
+    public List<SamlValidationResponse> batchOnPool() {
+        return validator.validateAll(responses, IDPSSODescriptor.DEFAULT_ELEMENT_NAME, executor);
+    }
+
+    private static void requireValid(List<SamlValidationResponse> validationResponses) {
+        for (SamlValidationResponse validationResponse : validationResponses) {
+            if (!validationResponse.isOK()) {
+                throw new IllegalStateException("Benchmark fixture failed signature validation: " + validationResponse.getErrorMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.EncrypterFactory;
+import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
+import uk.gov.ida.saml.security.KeyStoreBackedEncryptionCredentialResolver;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+
+/**
+ * Encrypts an assertion for the hub, and decrypts it again, with each data encryption algorithm a recipient may
+ * ask for in its metadata. The RSA key transport is the same for each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataEncryptionAlgorithmBenchmark {
+
+    @Param({
+            "http://www.w3.org/2001/04/xmlenc#aes128-cbc",
+            "http://www.w3.org/2009/xmlenc11#aes128-gcm",
+            "http://www.w3.org/2009/xmlenc11#aes256-gcm"})
+    public String dataEncryptionAlgorithm;
+
+    private Assertion assertion;
+    private Encrypter encrypter;
+    private Decrypter decrypter;
+    private EncryptedAssertion encryptedAssertion;
+
+    @Setup
+    public void setUp() throws Exception {
+        encrypter = new EncrypterFactory()
+                .withDataEncryptionAlgorithm(dataEncryptionAlgorithm)
+                .createEncrypter(new KeyStoreBackedEncryptionCredentialResolver(SamlFixtures.hubEncryptionKeyStore()).getEncryptingCredential(SamlFixtures.HUB_ENTITY_ID));
+        decrypter = new DecrypterFactory().createDecrypter(new IdaKeyStoreCredentialRetriever(SamlFixtures.hubKeyStore()).getDecryptingCredentials());
+        assertion = anAssertion().addAttributeStatement(AttributeStatementBuilder.anAttributeStatement().build()).buildUnencrypted();
+        encryptedAssertion = encrypter.encrypt(assertion);
+    }
+
+    @Benchmark
+    public EncryptedAssertion encrypt() throws Exception {
+        return encrypter.encrypt(assertion);
+    }
+
+    @Benchmark
+    public Assertion decrypt() throws Exception {
+        return decrypter.decrypt(encryptedAssertion);
+    }
+}
@@ -0,0 +1,58 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opensaml.saml.saml2.core.Assertion;
+import uk.gov.ida.saml.core.domain.AddressFactory;
+import uk.gov.ida.saml.core.transformers.AuthnContextFactory;
+import uk.gov.ida.saml.core.transformers.IdentityProviderAssertionUnmarshaller;
+import uk.gov.ida.saml.core.transformers.IdentityProviderAuthnStatementUnmarshaller;
+import uk.gov.ida.saml.core.transformers.VerifyMatchingDatasetUnmarshaller;
+import uk.gov.ida.saml.security.AssertionDecrypter;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainUnmarshallingBenchmark {
+
+    private List<Assertion> decryptedAssertions;
+    private IdentityProviderAssertionUnmarshaller unmarshaller;
+
+    @Setup
+    public void setUp() {
+        AssertionDecrypter assertionDecrypter = new AssertionDecrypter(
+                new EncryptionAlgorithmValidator(),
+                new DecrypterFactory().createDecrypter(new IdaKeyStoreCredentialRetriever(SamlFixtures.hubKeyStore()).getDecryptingCredentials()));
+        decryptedAssertions = assertionDecrypter.decryptAssertions(new ValidatedResponse(SamlFixtures.idpResponse()));
+        unmarshaller = new IdentityProviderAssertionUnmarshaller(
+                new VerifyMatchingDatasetUnmarshaller(new AddressFactory()),
+                new IdentityProviderAuthnStatementUnmarshaller(new AuthnContextFactory()),
+                SamlFixtures.HUB_ENTITY_ID);
+    }
+
+    @Benchmark
+    public void matchingDatasetAndAuthnStatementAssertions(Blackhole blackhole) {
+        for (Assertion assertion : decryptedAssertions) {
+            blackhole.consume(unmarshaller.fromVerifyAssertion(assertion));
+        }
+    }
+}
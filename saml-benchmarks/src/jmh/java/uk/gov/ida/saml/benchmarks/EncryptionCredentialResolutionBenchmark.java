@@ -0,0 +1,55 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.security.credential.Credential;
+import uk.gov.ida.saml.metadata.factories.CredentialResolverFactory;
+import uk.gov.ida.saml.security.MetadataBackedEncryptionCredentialResolver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the hub's encryption credential in federation metadata, as is done for every outbound encrypted
+ * message, with and without remembering the credential between refreshes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionCredentialResolutionBenchmark {
+
+    private MetadataBackedEncryptionCredentialResolver uncachedResolver;
+    private MetadataBackedEncryptionCredentialResolver cachedResolver;
+
+    @Setup
+    public void setUp() throws Exception {
+        MetadataResolver metadataResolver = SamlFixtures.federationMetadataResolver();
+        MetadataCredentialResolver credentialResolver = new CredentialResolverFactory().create(metadataResolver);
+        uncachedResolver = new MetadataBackedEncryptionCredentialResolver(credentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        cachedResolver = new MetadataBackedEncryptionCredentialResolver(credentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME, (RefreshableMetadataResolver) metadataResolver);
+    }
+
+    @Benchmark
+    public Credential resolveEveryTime() {
+        return uncachedResolver.getEncryptingCredential(SamlFixtures.HUB_ENTITY_ID);
+    }
+
+    @Benchmark
+    public Credential resolveOncePerRefresh() {
+        return cachedResolver.getEncryptingCredential(SamlFixtures.HUB_ENTITY_ID);
+    }
+}
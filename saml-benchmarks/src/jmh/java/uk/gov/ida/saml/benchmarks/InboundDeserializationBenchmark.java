@@ -0,0 +1,51 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Response;
+import uk.gov.ida.saml.core.api.CoreTransformersFactory;
+import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
+import uk.gov.ida.saml.deserializers.validators.ResponseSizeValidator;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundDeserializationBenchmark {
+
+    private static final int MAX_DECODED_RESPONSE_LENGTH = 50000;
+
+    private String encodedResponse;
+    private StringToOpenSamlObjectTransformer<Response> stringTransformer;
+    private StringToOpenSamlObjectTransformer<Response> byteBufferTransformer;
+
+    @Setup
+    public void setUp() {
+        encodedResponse = SamlFixtures.encodedIdpResponse();
+        CoreTransformersFactory coreTransformersFactory = new CoreTransformersFactory();
+        stringTransformer = coreTransformersFactory.getStringtoOpenSamlObjectTransformer(new ResponseSizeValidator());
+        byteBufferTransformer = coreTransformersFactory.getStringtoOpenSamlObjectTransformer(new ResponseSizeValidator(), MAX_DECODED_RESPONSE_LENGTH);
+    }
+
+    @Benchmark
+    public Response stringPipeline() {
+        return stringTransformer.apply(encodedResponse);
+    }
+
+    @Benchmark
+    public Response byteBufferPipeline() {
+        return byteBufferTransformer.apply(encodedResponse);
+    }
+}
@@ -0,0 +1,66 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Level;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
+import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
+import uk.gov.ida.saml.core.api.CoreTransformersFactory;
+import uk.gov.ida.saml.core.transformers.outbound.ResponseToSignedStringTransformer;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAuthnStatementAssertion;
+import static uk.gov.ida.saml.core.test.builders.ResponseBuilder.aResponse;
+
+/**
+ * Signs, encrypts and serialises a response with two unsigned assertions. The transformer mutates the
+ * response it is given, so a fresh one is built outside the measured region for every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutboundResponseBenchmark {
+
+    private ResponseToSignedStringTransformer responseTransformer;
+    private Response unsignedResponse;
+
+    @Setup
+    public void setUp() {
+        responseTransformer = new CoreTransformersFactory().getResponseStringTransformer(
+                SamlFixtures.hubEncryptionKeyStore(),
+                SamlFixtures.hubKeyStore(),
+                requestId -> SamlFixtures.HUB_ENTITY_ID,
+                new SignatureRSASHA256(),
+                new DigestSHA256());
+    }
+
+    @Setup(Level.Invocation)
+    public void buildUnsignedResponse() throws Exception {
+        unsignedResponse = aResponse()
+                .withInResponseTo(SamlFixtures.REQUEST_ID)
+                .withoutSignatureElement()
+                .withNoDefaultAssertion()
+                .addAssertion(anAssertion().withSignature(null).buildUnencrypted())
+                .addAssertion(anAuthnStatementAssertion().withSignature(null).buildUnencrypted())
+                .build();
+    }
+
+    @Benchmark
+    public String signEncryptAndEncode() {
+        return responseTransformer.apply(unsignedResponse);
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.XMLObject;
+import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
+import uk.gov.ida.saml.deserializers.parser.StripedParserPool;
+import uk.gov.ida.saml.serializers.XmlObjectToElementTransformer;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.gov.ida.shared.utils.xml.XmlUtils.writeToString;
+
+/**
+ * Parses the same response from many threads at once, to show contention on the globally registered parser
+ * pool compared with a {@link StripedParserPool} with a stripe per thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ParserPoolBenchmark {
+
+    private String responseXml;
+    private SamlObjectParser globalPoolParser;
+    private SamlObjectParser stripedPoolParser;
+
+    @Setup
+    public void setUp() {
+        responseXml = writeToString(new XmlObjectToElementTransformer<>().apply(SamlFixtures.idpResponse()));
+        globalPoolParser = new SamlObjectParser();
+        stripedPoolParser = new SamlObjectParser(new StripedParserPool(16, 2));
+    }
+
+    @Benchmark
+    public XMLObject globalParserPool() throws Exception {
+        return globalPoolParser.getSamlObject(responseXml);
+    }
+
+    @Benchmark
+    public XMLObject stripedParserPool() throws Exception {
+        return stripedPoolParser.getSamlObject(responseXml);
+    }
+}
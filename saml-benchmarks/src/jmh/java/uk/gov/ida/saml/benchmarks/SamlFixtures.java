@@ -0,0 +1,104 @@
+package uk.gov.ida.saml.benchmarks;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import org.apache.commons.codec.binary.Base64;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
+import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.metadata.StringBackedMetadataResolver;
+import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+import uk.gov.ida.saml.security.EncryptionKeyStore;
+import uk.gov.ida.saml.security.IdaKeyStore;
+import uk.gov.ida.saml.security.SigningKeyStore;
+import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Collections;
+
+import static uk.gov.ida.saml.core.test.AuthnResponseFactory.anAuthnResponseFactory;
+
+/**
+ * Builds the messages and key material shared by the benchmarks from the saml-test factories, so every
+ * benchmark exercises the same realistic IdP response: a signed Response carrying an encrypted matching
+ * dataset assertion and an encrypted authn statement assertion, both signed by the IdP.
+ */
+public final class SamlFixtures {
+
+    public static final String IDP_ENTITY_ID = TestEntityIds.STUB_IDP_ONE;
+    public static final String HUB_ENTITY_ID = TestEntityIds.HUB_ENTITY_ID;
+    public static final String REQUEST_ID = "_a-request-id-for-benchmarking";
+
+    private static final PublicKeyFactory PUBLIC_KEY_FACTORY = new PublicKeyFactory(new X509CertificateFactory());
+
+    static {
+        IdaSamlBootstrap.bootstrap();
+    }
+
+    private SamlFixtures() {
+    }
+
+    public static Response idpResponse() {
+        try {
+            return anAuthnResponseFactory().aResponseFromIdp(
+                    REQUEST_ID,
+                    IDP_ENTITY_ID,
+                    "https://www.signin.service.gov.uk/SAML2/SSO/Response/POST",
+                    new SignatureRSASHA256(),
+                    new DigestSHA256());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String encodedIdpResponse() {
+        return new XmlObjectToBase64EncodedStringTransformer<>().apply(idpResponse());
+    }
+
+    public static SigningKeyStore idpSigningKeyStore() {
+        PublicKey idpSigningKey = PUBLIC_KEY_FACTORY.createPublicKey(TestCertificateStrings.PUBLIC_SIGNING_CERTS.get(IDP_ENTITY_ID));
+        return entityId -> Collections.singletonList(idpSigningKey);
+    }
+
+    public static EncryptionKeyStore hubEncryptionKeyStore() {
+        PublicKey hubEncryptionKey = PUBLIC_KEY_FACTORY.createPublicKey(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT);
+        return entityId -> hubEncryptionKey;
+    }
+
+    public static IdaKeyStore hubKeyStore() {
+        KeyPair signingKeyPair = new KeyPair(
+                PUBLIC_KEY_FACTORY.createPublicKey(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT),
+                privateKey(TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY));
+        KeyPair encryptionKeyPair = new KeyPair(
+                PUBLIC_KEY_FACTORY.createPublicKey(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT),
+                privateKey(TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY));
+        return new IdaKeyStore(signingKeyPair, Collections.singletonList(encryptionKeyPair));
+    }
+
+    public static MetadataResolver federationMetadataResolver() {
+        StringBackedMetadataResolver metadataResolver = new StringBackedMetadataResolver(new MetadataFactory().defaultMetadata());
+        try {
+            BasicParserPool parserPool = new BasicParserPool();
+            parserPool.initialize();
+            metadataResolver.setParserPool(parserPool);
+            metadataResolver.setId("benchmark-metadata");
+            metadataResolver.initialize();
+        } catch (ComponentInitializationException e) {
+            throw new IllegalStateException(e);
+        }
+        return metadataResolver;
+    }
+
+    private static PrivateKey privateKey(String encodedKey) {
+        return new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(encodedKey));
+    }
+}
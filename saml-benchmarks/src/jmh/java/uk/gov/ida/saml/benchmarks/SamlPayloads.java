@@ -0,0 +1,36 @@
+package uk.gov.ida.saml.benchmarks;
+
+public final class SamlPayloads {
+
+    private static final String AUTHN_REQUEST = "<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" " +
+            "AssertionConsumerServiceIndex=\"1\" Destination=\"https://www.signin.service.gov.uk/SAML2/SSO\" " +
+            "ID=\"_a4f9a4c4-1de4-4c1c-9d8d-0d8e1a7b0f9e\" IssueInstant=\"2022-10-17T10:15:30.000Z\" Version=\"2.0\">" +
+            "<saml2:Issuer xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\">http://www.test-rp.gov.uk/SAML2/MD</saml2:Issuer>" +
+            "<ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><ds:SignedInfo>" +
+            "<ds:CanonicalizationMethod Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/>" +
+            "<ds:SignatureMethod Algorithm=\"http://www.w3.org/2001/04/xmldsig-more#rsa-sha256\"/>" +
+            "<ds:Reference URI=\"#_a4f9a4c4-1de4-4c1c-9d8d-0d8e1a7b0f9e\"><ds:Transforms>" +
+            "<ds:Transform Algorithm=\"http://www.w3.org/2000/09/xmldsig#enveloped-signature\"/>" +
+            "<ds:Transform Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/></ds:Transforms>" +
+            "<ds:DigestMethod Algorithm=\"http://www.w3.org/2001/04/xmlenc#sha256\"/>" +
+            "<ds:DigestValue>3pmTRAJ0VY1dnnv0Bq5rOQG6JZkCnmgdTvfCgsmOCNs=</ds:DigestValue></ds:Reference></ds:SignedInfo>" +
+            "<ds:SignatureValue>Hp0Yc1ehWJJm5Y4Eg9TQ3i6rmxZl2bDoEqR5YVR0bGNmRjJwVFVsYnBkMVF6T0dSak9HRXpNVEl6TnpReU9EQmpPR1pq" +
+            "WW1aaE16QTJPR1l4Wm1VeU5qRTROVEZpWWpGbFlUTTJOR0k1TlRJNVpqSmtPREl3TUdJeU16aG1NVEExTkRoaA==</ds:SignatureValue>" +
+            "</ds:Signature></saml2p:AuthnRequest>";
+
+    private SamlPayloads() {
+    }
+
+    /**
+     * Representative SAML XML of exactly the given size in bytes, for benchmarks where only the
+     * length and character mix of the input matter.
+     */
+    public static String xmlOfSize(int size) {
+        StringBuilder xml = new StringBuilder(size + AUTHN_REQUEST.length());
+        while (xml.length() < size) {
+            xml.append(AUTHN_REQUEST);
+        }
+        xml.setLength(size);
+        return xml.toString();
+    }
+}
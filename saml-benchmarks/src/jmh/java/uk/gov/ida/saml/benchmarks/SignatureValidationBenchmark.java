@@ -0,0 +1,82 @@
+package uk.gov.ida.saml.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import uk.gov.ida.saml.core.validation.SamlValidationResponse;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+import uk.gov.ida.saml.security.CredentialFactorySignatureValidator;
+import uk.gov.ida.saml.security.MetadataBackedSignatureValidator;
+import uk.gov.ida.saml.security.SamlMessageSignatureValidator;
+import uk.gov.ida.saml.security.SigningCredentialFactory;
+import uk.gov.ida.saml.security.VerifiedSignatureCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureValidationBenchmark {
+
+    private Response response;
+    private SamlMessageSignatureValidator keyStoreBackedValidator;
+    private SamlMessageSignatureValidator metadataBackedValidator;
+    private SamlMessageSignatureValidator cachingMetadataBackedValidator;
+
+    @Setup
+    public void setUp() throws Exception {
+        response = SamlFixtures.idpResponse();
+        keyStoreBackedValidator = new SamlMessageSignatureValidator(
+                new CredentialFactorySignatureValidator(new SigningCredentialFactory(SamlFixtures.idpSigningKeyStore())));
+        metadataBackedValidator = new SamlMessageSignatureValidator(
+                MetadataBackedSignatureValidator.withoutCertificateChainValidation(
+                        new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(SamlFixtures.federationMetadataResolver())));
+
+        MetadataResolver metadataResolver = SamlFixtures.federationMetadataResolver();
+        cachingMetadataBackedValidator = new SamlMessageSignatureValidator(
+                MetadataBackedSignatureValidator.withoutCertificateChainValidation(
+                        new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(metadataResolver),
+                        new VerifiedSignatureCache(1000, Duration.ofMinutes(5)),
+                        (RefreshableMetadataResolver) metadataResolver));
+
+        requireValid(keyStoreBackedSignatureValidation());
+        requireValid(metadataBackedSignatureValidation());
+        requireValid(cachedMetadataBackedSignatureValidation());
+    }
+
+    @Benchmark
+    public SamlValidationResponse keyStoreBackedSignatureValidation() {
+        return keyStoreBackedValidator.validate(response, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    @Benchmark
+    public SamlValidationResponse metadataBackedSignatureValidation() {
+        return metadataBackedValidator.validate(response, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    @Benchmark
+    public SamlValidationResponse cachedMetadataBackedSignatureValidation() {
+        return cachingMetadataBackedValidator.validate(response, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    private static void requireValid(SamlValidationResponse validationResponse) {
+        if (!validationResponse.isOK()) {
+            throw new IllegalStateException("Benchmark fixture failed signature validation: " + validationResponse.getErrorMessage());
+        }
+    }
+}
@@ -62,6 +62,7 @@ import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersion
 public abstract class IdaSamlBootstrap {
 
     private static boolean hasBeenBootstrapped = false;
+    private static volatile int providerRegistrations = 0;
 
     public static class BootstrapException extends RuntimeException {
         public BootstrapException(Exception e) {
@@ -81,6 +82,15 @@ public abstract class IdaSamlBootstrap {
         }
 
         hasBeenBootstrapped = true;
+        providerRegistrations++;
+    }
+
+    /**
+     * Incremented each time this class registers its providers, so that anything caching registry lookups
+     * knows to discard them.
+     */
+    public static int getProviderRegistrations() {
+        return providerRegistrations;
     }
 
     private static void doBootstrapping() throws InitializationException {
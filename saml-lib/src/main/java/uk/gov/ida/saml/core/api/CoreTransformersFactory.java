@@ -1,5 +1,6 @@
 package uk.gov.ida.saml.core.api;
 
+import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.saml2.core.RequestAbstractType;
 import org.opensaml.xmlsec.algorithm.DigestAlgorithm;
@@ -16,6 +17,7 @@ import uk.gov.ida.saml.deserializers.ElementToOpenSamlXMLObjectTransformer;
 import uk.gov.ida.saml.deserializers.OpenSamlXMLObjectUnmarshaller;
 import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
 import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
+import uk.gov.ida.saml.deserializers.validators.Base64ByteDecoder;
 import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
 import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
 import uk.gov.ida.saml.deserializers.validators.SizeValidator;
@@ -72,6 +74,31 @@ public class CoreTransformersFactory {
         );
     }
 
+    public <TOutput extends XMLObject> StringToOpenSamlObjectTransformer<TOutput> getStringtoOpenSamlObjectTransformer(
+            final SizeValidator sizeValidator,
+            final int maxDecodedLength
+    ) {
+        return new StringToOpenSamlObjectTransformer<>(
+                new NotNullSamlStringValidator(),
+                new Base64ByteDecoder(maxDecodedLength),
+                sizeValidator,
+                new OpenSamlXMLObjectUnmarshaller<TOutput>(new SamlObjectParser())
+        );
+    }
+
+    public <TOutput extends XMLObject> StringToOpenSamlObjectTransformer<TOutput> getStringtoOpenSamlObjectTransformer(
+            final SizeValidator sizeValidator,
+            final int maxDecodedLength,
+            final ParserPool parserPool
+    ) {
+        return new StringToOpenSamlObjectTransformer<>(
+                new NotNullSamlStringValidator(),
+                new Base64ByteDecoder(maxDecodedLength),
+                sizeValidator,
+                new OpenSamlXMLObjectUnmarshaller<TOutput>(new SamlObjectParser(parserPool))
+        );
+    }
+
     public <TInput extends RequestAbstractType> SamlRequestSignatureValidator<TInput> getSamlRequestSignatureValidator(
             final SigningKeyStore publicKeyStore
     ) {
@@ -1,30 +1,59 @@
 package uk.gov.ida.saml.core.transformers.outbound.decorators;
 
 import com.google.common.base.Throwables;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.encryption.support.EncryptionException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import uk.gov.ida.saml.security.EncrypterFactory;
 import uk.gov.ida.saml.security.EncryptionCredentialResolver;
 import uk.gov.ida.saml.security.EntityToEncryptForLocator;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public abstract class AbstractAssertionEncrypter<T> {
     protected final EncryptionCredentialResolver credentialResolver;
     protected final EncrypterFactory encrypterFactory;
     protected final EntityToEncryptForLocator entityToEncryptForLocator;
+    private final Executor executor;
 
     public AbstractAssertionEncrypter(
             final EncrypterFactory encrypterFactory,
             final EntityToEncryptForLocator entityToEncryptForLocator,
             final EncryptionCredentialResolver credentialResolver) {
 
+        this(encrypterFactory, entityToEncryptForLocator, credentialResolver, null);
+    }
+
+    /**
+     * Encrypts the assertions of a message with several assertions concurrently on the given executor, which
+     * should be bounded, with the first assertion encrypted on the calling thread. Each assertion is moved into a
+     * document of its own first, as encryption writes to the assertion's document. An assertion the executor
+     * rejects is encrypted on the calling thread instead. The encrypted assertions are added to the message in the
+     * order of the assertions they replace.
+     */
+    public AbstractAssertionEncrypter(
+            final EncrypterFactory encrypterFactory,
+            final EntityToEncryptForLocator entityToEncryptForLocator,
+            final EncryptionCredentialResolver credentialResolver,
+            final Executor executor) {
+
         this.encrypterFactory = encrypterFactory;
         this.entityToEncryptForLocator = entityToEncryptForLocator;
         this.credentialResolver = credentialResolver;
+        this.executor = executor;
     }
 
     public T encryptAssertions(T samlMessage) {
@@ -34,12 +63,13 @@ public abstract class AbstractAssertionEncrypter<T> {
 
             Encrypter samlEncrypter = encrypterFactory.createEncrypter(credential);
 
-            for (Assertion assertion : getAssertions(samlMessage)) {
-                try {
-                    EncryptedAssertion encryptedAssertion = samlEncrypter.encrypt(assertion);
+            if (executor != null && getAssertions(samlMessage).size() > 1) {
+                for (EncryptedAssertion encryptedAssertion : encryptConcurrently(samlEncrypter, new ArrayList<>(getAssertions(samlMessage)))) {
                     getEncryptedAssertions(samlMessage).add(encryptedAssertion);
-                } catch (EncryptionException e) {
-                    throw Throwables.propagate(e);
+                }
+            } else {
+                for (Assertion assertion : getAssertions(samlMessage)) {
+                    getEncryptedAssertions(samlMessage).add(encrypt(samlEncrypter, assertion));
                 }
             }
             getAssertions(samlMessage).removeAll(getAssertions(samlMessage));
@@ -47,6 +77,69 @@ public abstract class AbstractAssertionEncrypter<T> {
         return samlMessage;
     }
 
+    private List<EncryptedAssertion> encryptConcurrently(Encrypter samlEncrypter, List<Assertion> assertions) {
+        assertions.forEach(AbstractAssertionEncrypter::moveToOwnDocument);
+
+        List<Assertion> concurrentAssertions = assertions.subList(1, assertions.size());
+        List<CompletableFuture<EncryptedAssertion>> pending = new ArrayList<>();
+        List<EncryptedAssertion> encryptedAssertions = new ArrayList<>();
+        try {
+            for (Assertion assertion : concurrentAssertions) {
+                pending.add(submit(samlEncrypter, assertion));
+            }
+            encryptedAssertions.add(encrypt(samlEncrypter, assertions.get(0)));
+            for (int i = 0; i < pending.size(); i++) {
+                CompletableFuture<EncryptedAssertion> encryption = pending.get(i);
+                encryptedAssertions.add(encryption == null ? encrypt(samlEncrypter, concurrentAssertions.get(i)) : join(encryption));
+            }
+        } finally {
+            pending.stream().filter(Objects::nonNull).forEach(encryption -> encryption.cancel(false));
+        }
+        return encryptedAssertions;
+    }
+
+    /**
+     * @return the pending encryption, or null if the executor rejected it
+     */
+    private CompletableFuture<EncryptedAssertion> submit(Encrypter samlEncrypter, Assertion assertion) {
+        try {
+            return CompletableFuture.supplyAsync(() -> encrypt(samlEncrypter, assertion), executor);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private static EncryptedAssertion encrypt(Encrypter samlEncrypter, Assertion assertion) {
+        try {
+            return samlEncrypter.encrypt(assertion);
+        } catch (EncryptionException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static void moveToOwnDocument(Assertion assertion) {
+        Element element = assertion.getDOM();
+        if (element != null && element.getOwnerDocument().getDocumentElement() == element) {
+            return;
+        }
+        try {
+            // an existing DOM is adopted rather than marshalled again, so a signature is kept
+            Document document = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(assertion).marshall(assertion, document);
+        } catch (MarshallingException | XMLParserException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
     protected abstract String getRequestId(final T response);
 
     protected abstract List<EncryptedAssertion> getEncryptedAssertions(T response);
@@ -9,6 +9,7 @@ import uk.gov.ida.saml.security.EntityToEncryptForLocator;
 
 import javax.inject.Inject;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class SamlResponseAssertionEncrypter extends AbstractAssertionEncrypter<Response> {
 
@@ -21,6 +22,14 @@ public class SamlResponseAssertionEncrypter extends AbstractAssertionEncrypter<R
 
     }
 
+    public SamlResponseAssertionEncrypter(
+            EncryptionCredentialResolver credentialResolver,
+            EncrypterFactory encrypterFactory,
+            EntityToEncryptForLocator entityToEncryptForLocator,
+            Executor executor) {
+        super(encrypterFactory, entityToEncryptForLocator, credentialResolver, executor);
+    }
+
     @Override
     protected String getRequestId(final Response response) {
         return response.getInResponseTo();
@@ -7,6 +7,9 @@ import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
 import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
 import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static uk.gov.ida.saml.core.validation.errors.SamlTransformationErrorFactory.unableToDeserializeStringToOpenSaml;
 
 public class OpenSamlXMLObjectUnmarshaller<TOutput extends XMLObject> {
@@ -25,4 +28,14 @@ public class OpenSamlXMLObjectUnmarshaller<TOutput extends XMLObject> {
             throw new SamlTransformationErrorException(failure.getErrorMessage(), e, failure.getLogLevel());
         }
     }
+
+    public TOutput fromBytes(ByteBuffer input) {
+        try {
+            return samlObjectParser.getSamlObject(input);
+        } catch (UnmarshallingException | XMLParserException  e) {
+            String decodedInput = new String(input.array(), input.arrayOffset() + input.position(), input.remaining(), StandardCharsets.UTF_8);
+            SamlValidationSpecificationFailure failure = unableToDeserializeStringToOpenSaml(decodedInput);
+            throw new SamlTransformationErrorException(failure.getErrorMessage(), e, failure.getLogLevel());
+        }
+    }
 }
@@ -1,16 +1,19 @@
 package uk.gov.ida.saml.deserializers;
 
 import org.opensaml.core.xml.XMLObject;
+import uk.gov.ida.saml.deserializers.validators.Base64ByteDecoder;
 import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
 import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
 import uk.gov.ida.saml.deserializers.validators.SizeValidator;
 
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
 public class StringToOpenSamlObjectTransformer<TOutput extends XMLObject> implements Function<String, TOutput> {
 
     private final NotNullSamlStringValidator notNullSamlStringValidator;
     private final Base64StringDecoder base64StringDecoder;
+    private final Base64ByteDecoder base64ByteDecoder;
     private final SizeValidator sizeValidator;
     private final OpenSamlXMLObjectUnmarshaller<TOutput> openSamlXMLObjectUnmarshaller;
 
@@ -22,6 +25,24 @@ public class StringToOpenSamlObjectTransformer<TOutput extends XMLObject> implem
 
         this.notNullSamlStringValidator = notNullSamlStringValidator;
         this.base64StringDecoder = base64StringDecoder;
+        this.base64ByteDecoder = null;
+        this.sizeValidator = sizeValidator;
+        this.openSamlXMLObjectUnmarshaller = openSamlXMLObjectUnmarshaller;
+    }
+
+    /**
+     * Decodes the base64 input into a reusable byte buffer and parses it from there, without creating an
+     * intermediate String. The size validator sees the decoded byte length rather than the character count.
+     */
+    public StringToOpenSamlObjectTransformer(
+            final NotNullSamlStringValidator notNullSamlStringValidator,
+            final Base64ByteDecoder base64ByteDecoder,
+            final SizeValidator sizeValidator,
+            final OpenSamlXMLObjectUnmarshaller<TOutput> openSamlXMLObjectUnmarshaller) {
+
+        this.notNullSamlStringValidator = notNullSamlStringValidator;
+        this.base64StringDecoder = null;
+        this.base64ByteDecoder = base64ByteDecoder;
         this.sizeValidator = sizeValidator;
         this.openSamlXMLObjectUnmarshaller = openSamlXMLObjectUnmarshaller;
     }
@@ -29,6 +50,11 @@ public class StringToOpenSamlObjectTransformer<TOutput extends XMLObject> implem
     @Override
     public TOutput apply(final String input) {
         notNullSamlStringValidator.validate(input);
+        if (base64ByteDecoder != null) {
+            final ByteBuffer decodedInput = base64ByteDecoder.decode(input);
+            sizeValidator.validateBytes(decodedInput);
+            return openSamlXMLObjectUnmarshaller.fromBytes(decodedInput);
+        }
         final String decodedInput = base64StringDecoder.decode(input);
         sizeValidator.validate(decodedInput);
         return openSamlXMLObjectUnmarshaller.fromString(decodedInput);
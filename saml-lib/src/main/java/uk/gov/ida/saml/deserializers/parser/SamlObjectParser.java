@@ -1,35 +1,87 @@
 package uk.gov.ida.saml.deserializers.parser;
 
 import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
 import net.shibboleth.utilities.java.support.xml.XMLParserException;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
-import org.opensaml.core.xml.io.Unmarshaller;
-import org.opensaml.core.xml.io.UnmarshallerFactory;
 import org.opensaml.core.xml.io.UnmarshallingException;
-import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.Response;
 import org.w3c.dom.Element;
 
+import javax.xml.namespace.QName;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class SamlObjectParser {
 
-    @SuppressWarnings("unchecked")
+    private static final UnmarshallerCache UNMARSHALLER_CACHE = new UnmarshallerCache();
+
+    private final ParserPool parserPool;
+
+    /**
+     * Parses with the parser pool registered with OpenSAML at the time of each call.
+     */
+    public SamlObjectParser() {
+        this(null);
+    }
+
+    /**
+     * Parses with a dedicated parser pool, e.g. a {@link StripedParserPool} sized for the number of request threads.
+     */
+    public SamlObjectParser(ParserPool parserPool) {
+        this.parserPool = parserPool;
+    }
+
     public <T extends XMLObject> T getSamlObject(String xmlString) throws UnmarshallingException, XMLParserException {
-        ParserPool parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        return getSamlObject(parse(new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8))));
+    }
 
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8));
-        return (T) XMLObjectSupport.unmarshallFromInputStream(parserPool, inputStream);
+    public <T extends XMLObject> T getSamlObject(ByteBuffer xmlBytes) throws UnmarshallingException, XMLParserException {
+        return getSamlObject(parse(new ByteArrayInputStream(xmlBytes.array(), xmlBytes.arrayOffset() + xmlBytes.position(), xmlBytes.remaining())));
     }
 
     @SuppressWarnings("unchecked")
     public <T extends XMLObject> T getSamlObject(Element samlRootElement) throws UnmarshallingException {
-        // Get appropriate unmarshaller
-        UnmarshallerFactory unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
-        Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(samlRootElement);
+        return (T) UNMARSHALLER_CACHE.getUnmarshaller(samlRootElement).unmarshall(samlRootElement);
+    }
+
+    public Response parseResponse(byte[] xmlBytes) throws UnmarshallingException, XMLParserException {
+        return parseExpecting(xmlBytes, Response.DEFAULT_ELEMENT_NAME, Response.class);
+    }
+
+    public AuthnRequest parseAuthnRequest(byte[] xmlBytes) throws UnmarshallingException, XMLParserException {
+        return parseExpecting(xmlBytes, AuthnRequest.DEFAULT_ELEMENT_NAME, AuthnRequest.class);
+    }
+
+    /**
+     * Unmarshalls straight with the unmarshaller registered for the expected root element, only falling back to
+     * the generic lookup if the root declares its own xsi:type.
+     */
+    private <T extends XMLObject> T parseExpecting(byte[] xmlBytes, QName expectedElementName, Class<T> expectedType) throws UnmarshallingException, XMLParserException {
+        Element rootElement = parse(new ByteArrayInputStream(xmlBytes));
+        if (!expectedElementName.getNamespaceURI().equals(rootElement.getNamespaceURI())
+                || !expectedElementName.getLocalPart().equals(rootElement.getLocalName())) {
+            throw new UnmarshallingException("Expected " + expectedElementName + " but root element was {" + rootElement.getNamespaceURI() + "}" + rootElement.getLocalName());
+        }
+
+        XMLObject samlObject = rootElement.hasAttributeNS(XMLConstants.XSI_NS, "type")
+                ? getSamlObject(rootElement)
+                : UNMARSHALLER_CACHE.getUnmarshaller(expectedElementName).unmarshall(rootElement);
+        if (!expectedType.isInstance(samlObject)) {
+            throw new UnmarshallingException("Expected " + expectedType.getSimpleName() + " but unmarshalled " + samlObject.getClass().getName());
+        }
+        return expectedType.cast(samlObject);
+    }
+
+    private Element parse(InputStream inputStream) throws XMLParserException {
+        return parserPool().parse(inputStream).getDocumentElement();
+    }
 
-        // Unmarshall using the document root element
-        return (T) unmarshaller.unmarshall(samlRootElement);
+    private ParserPool parserPool() {
+        return parserPool != null ? parserPool : XMLObjectProviderRegistrySupport.getParserPool();
     }
 }
@@ -0,0 +1,260 @@
+package uk.gov.ida.saml.deserializers.parser;
+
+import net.shibboleth.utilities.java.support.xml.LoggingErrorHandler;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.validation.Schema;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ParserPool} that spreads its idle {@link DocumentBuilder}s over a number of independently locked
+ * stripes, chosen by the calling thread, so that concurrent request threads do not all queue on one lock as
+ * they do with the global pool. With at least as many stripes as request threads each thread effectively
+ * owns its own builders.
+ *
+ * Builders are configured as securely as OpenSAML's {@code BasicParserPool} defaults (secure processing on,
+ * doctype declarations rejected, no entity expansion or XInclude). At most {@code maxIdleBuildersPerStripe}
+ * builders are kept per stripe; any more than that are discarded when returned.
+ */
+public class StripedParserPool implements ParserPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripedParserPool.class);
+    private static final String DISALLOW_DOCTYPE_DECL = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    private final DocumentBuilderFactory builderFactory;
+    private final ErrorHandler errorHandler = new LoggingErrorHandler(LOG);
+    private final Stripe[] stripes;
+    private final int maxIdleBuildersPerStripe;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    public StripedParserPool(int stripes, int maxIdleBuildersPerStripe) {
+        if (stripes < 1 || maxIdleBuildersPerStripe < 1) {
+            throw new IllegalArgumentException("Parser pool needs at least one stripe holding at least one builder");
+        }
+        this.builderFactory = newSecureBuilderFactory();
+        this.maxIdleBuildersPerStripe = maxIdleBuildersPerStripe;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public DocumentBuilder getBuilder() throws XMLParserException {
+        int stripeIndex = stripeIndexForCurrentThread();
+        Stripe stripe = stripes[stripeIndex];
+        DocumentBuilder delegate;
+        lock(stripe);
+        try {
+            delegate = stripe.idleBuilders.pollFirst();
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (delegate != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            delegate = newBuilder();
+        }
+        delegate.setErrorHandler(errorHandler);
+        return new PooledDocumentBuilder(delegate, stripeIndex);
+    }
+
+    @Override
+    public void returnBuilder(DocumentBuilder builder) {
+        if (!(builder instanceof PooledDocumentBuilder)) {
+            return;
+        }
+        PooledDocumentBuilder pooledBuilder = (PooledDocumentBuilder) builder;
+        if (pooledBuilder.returned) {
+            return;
+        }
+        pooledBuilder.returned = true;
+        pooledBuilder.delegate.reset();
+
+        Stripe stripe = stripes[pooledBuilder.stripeIndex];
+        lock(stripe);
+        try {
+            if (stripe.idleBuilders.size() < maxIdleBuildersPerStripe) {
+                stripe.idleBuilders.addFirst(pooledBuilder.delegate);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public Document newDocument() throws XMLParserException {
+        DocumentBuilder builder = getBuilder();
+        try {
+            return builder.newDocument();
+        } finally {
+            returnBuilder(builder);
+        }
+    }
+
+    @Override
+    public Document parse(InputStream input) throws XMLParserException {
+        return parse(new InputSource(input));
+    }
+
+    @Override
+    public Document parse(Reader input) throws XMLParserException {
+        return parse(new InputSource(input));
+    }
+
+    /** Number of builders handed out that were reused from a stripe. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Number of builders that had to be created because their stripe had none idle. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Number of times a thread found its stripe locked by another thread and had to wait. */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    private Document parse(InputSource input) throws XMLParserException {
+        DocumentBuilder builder = getBuilder();
+        try {
+            return builder.parse(input);
+        } catch (SAXException | IOException e) {
+            throw new XMLParserException("Unable to parse inputstream, it contained invalid XML", e);
+        } finally {
+            returnBuilder(builder);
+        }
+    }
+
+    private int stripeIndexForCurrentThread() {
+        return (int) (Thread.currentThread().getId() % stripes.length);
+    }
+
+    private void lock(Stripe stripe) {
+        if (!stripe.lock.tryLock()) {
+            waits.increment();
+            stripe.lock.lock();
+        }
+    }
+
+    private DocumentBuilder newBuilder() throws XMLParserException {
+        try {
+            return builderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new XMLParserException("Unable to create new document builder", e);
+        }
+    }
+
+    private static DocumentBuilderFactory newSecureBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature(DISALLOW_DOCTYPE_DECL, true);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to configure document builder factory securely", e);
+        }
+        factory.setCoalescing(true);
+        factory.setExpandEntityReferences(false);
+        factory.setIgnoringComments(true);
+        factory.setIgnoringElementContentWhitespace(true);
+        factory.setNamespaceAware(true);
+        factory.setValidating(false);
+        factory.setXIncludeAware(false);
+        return factory;
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<DocumentBuilder> idleBuilders = new ArrayDeque<>();
+    }
+
+    /**
+     * Wraps a pooled builder so that only builders created by this pool are ever taken back, and so that a
+     * builder returned twice is only pooled once.
+     */
+    private static class PooledDocumentBuilder extends DocumentBuilder {
+        private final DocumentBuilder delegate;
+        private final int stripeIndex;
+        private boolean returned;
+
+        private PooledDocumentBuilder(DocumentBuilder delegate, int stripeIndex) {
+            this.delegate = delegate;
+            this.stripeIndex = stripeIndex;
+        }
+
+        @Override
+        public Document parse(InputSource is) throws SAXException, IOException {
+            return delegate.parse(is);
+        }
+
+        @Override
+        public boolean isNamespaceAware() {
+            return delegate.isNamespaceAware();
+        }
+
+        @Override
+        public boolean isValidating() {
+            return delegate.isValidating();
+        }
+
+        @Override
+        public void setEntityResolver(EntityResolver er) {
+            delegate.setEntityResolver(er);
+        }
+
+        @Override
+        public void setErrorHandler(ErrorHandler eh) {
+            delegate.setErrorHandler(eh);
+        }
+
+        @Override
+        public Document newDocument() {
+            return delegate.newDocument();
+        }
+
+        @Override
+        public DOMImplementation getDOMImplementation() {
+            return delegate.getDOMImplementation();
+        }
+
+        @Override
+        public void reset() {
+            delegate.reset();
+        }
+
+        @Override
+        public Schema getSchema() {
+            return delegate.getSchema();
+        }
+
+        @Override
+        public boolean isXIncludeAware() {
+            return delegate.isXIncludeAware();
+        }
+    }
+}
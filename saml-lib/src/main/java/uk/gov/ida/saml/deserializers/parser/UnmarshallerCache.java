@@ -0,0 +1,118 @@
+package uk.gov.ida.saml.deserializers.parser;
+
+import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallerFactory;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.w3c.dom.Element;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+
+import javax.xml.namespace.QName;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers which {@link Unmarshaller} the registered {@link UnmarshallerFactory} picked for a root element name
+ * and xsi:type. The cache is dropped whenever OpenSAML is re-initialised with a new factory or
+ * {@link IdaSamlBootstrap} registers its providers. Element names come from untrusted input, so only a bounded
+ * number of lookups are remembered.
+ */
+class UnmarshallerCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    private volatile Snapshot snapshot = new Snapshot(null, -1);
+
+    Unmarshaller getUnmarshaller(Element element) throws UnmarshallingException {
+        Snapshot current = currentSnapshot();
+        QName elementName = QNameSupport.getNodeQName(element);
+        Key key = new Key(elementName, DOMTypeSupport.getXSIType(element));
+
+        Unmarshaller unmarshaller = current.unmarshallers.get(key);
+        if (unmarshaller == null) {
+            unmarshaller = current.factory.getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw new UnmarshallingException("Unable to unmarshall element, no unmarshaller registered for element " + elementName);
+            }
+            current.remember(key, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * Looks up the unmarshaller registered for an element name, for callers that already know the root
+     * element carries no xsi:type.
+     */
+    Unmarshaller getUnmarshaller(QName elementName) throws UnmarshallingException {
+        Snapshot current = currentSnapshot();
+        Key key = new Key(elementName, null);
+
+        Unmarshaller unmarshaller = current.unmarshallers.get(key);
+        if (unmarshaller == null) {
+            unmarshaller = current.factory.getUnmarshaller(elementName);
+            if (unmarshaller == null) {
+                throw new UnmarshallingException("Unable to unmarshall element, no unmarshaller registered for element " + elementName);
+            }
+            current.remember(key, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    int size() {
+        return snapshot.unmarshallers.size();
+    }
+
+    private Snapshot currentSnapshot() {
+        UnmarshallerFactory factory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        int providerRegistrations = IdaSamlBootstrap.getProviderRegistrations();
+        Snapshot current = snapshot;
+        if (current.factory != factory || current.providerRegistrations != providerRegistrations) {
+            current = new Snapshot(factory, providerRegistrations);
+            snapshot = current;
+        }
+        return current;
+    }
+
+    private static class Snapshot {
+        private final UnmarshallerFactory factory;
+        private final int providerRegistrations;
+        private final ConcurrentMap<Key, Unmarshaller> unmarshallers = new ConcurrentHashMap<>();
+
+        private Snapshot(UnmarshallerFactory factory, int providerRegistrations) {
+            this.factory = factory;
+            this.providerRegistrations = providerRegistrations;
+        }
+
+        private void remember(Key key, Unmarshaller unmarshaller) {
+            if (unmarshallers.size() < MAX_ENTRIES) {
+                unmarshallers.putIfAbsent(key, unmarshaller);
+            }
+        }
+    }
+
+    private static class Key {
+        private final QName elementName;
+        private final QName xsiType;
+
+        private Key(QName elementName, QName xsiType) {
+            this.elementName = elementName;
+            this.xsiType = xsiType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return elementName.equals(key.elementName) && Objects.equals(xsiType, key.xsiType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(elementName, xsiType);
+        }
+    }
+}
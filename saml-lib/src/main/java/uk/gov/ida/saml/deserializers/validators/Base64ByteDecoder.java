@@ -0,0 +1,119 @@
+package uk.gov.ida.saml.deserializers.validators;
+
+import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static uk.gov.ida.saml.core.validation.errors.SamlTransformationErrorFactory.invalidBase64Encoding;
+import static uk.gov.ida.saml.hub.errors.SamlTransformationErrorFactory.stringTooLarge;
+
+/**
+ * Decodes base64 in a single pass straight into a per-thread buffer, checking the alphabet, padding and
+ * decoded size as it goes. The returned buffer is only valid until the next call to {@link #decode(String)}
+ * on the same thread, so it must be consumed (e.g. parsed) before the thread decodes anything else.
+ */
+public class Base64ByteDecoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final int maxDecodedLength;
+    private final ThreadLocal<byte[]> buffers;
+
+    public Base64ByteDecoder(int maxDecodedLength) {
+        this.maxDecodedLength = maxDecodedLength;
+        this.buffers = ThreadLocal.withInitial(() -> new byte[Math.min(INITIAL_BUFFER_SIZE, maxDecodedLength)]);
+    }
+
+    public ByteBuffer decode(String input) {
+        byte[] buffer = bufferFor(input);
+        int decodedLength = decodeInto(input, buffer);
+        if (decodedLength > maxDecodedLength) {
+            SamlValidationSpecificationFailure failure = stringTooLarge(decodedLength, maxDecodedLength);
+            throw new SamlTransformationErrorException(failure.getErrorMessage(), failure.getLogLevel());
+        }
+        return ByteBuffer.wrap(buffer, 0, decodedLength);
+    }
+
+    private byte[] bufferFor(String input) {
+        byte[] buffer = buffers.get();
+        int requiredLength = Math.min(decodedLengthUpperBound(input), maxDecodedLength);
+        if (requiredLength > buffer.length) {
+            buffer = new byte[Math.min(Math.max(buffer.length * 2, requiredLength), maxDecodedLength)];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    static int decodedLengthUpperBound(String input) {
+        return input.length() / 4 * 3;
+    }
+
+    /**
+     * Validates and decodes the input in one scan, skipping whitespace. Output that does not fit is counted
+     * but not written, so the returned length may be larger than the output array.
+     */
+    static int decodeInto(String input, byte[] output) {
+        int decodedLength = 0;
+        int bits = 0;
+        int charsInQuantum = 0;
+        int padding = 0;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (isWhitespace(c)) {
+                continue;
+            }
+            int value;
+            if (c == '=') {
+                if (charsInQuantum < 2) {
+                    throw invalidEncoding(input);
+                }
+                padding++;
+                value = 0;
+            } else {
+                value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+                if (value < 0 || padding > 0) {
+                    throw invalidEncoding(input);
+                }
+            }
+
+            bits = (bits << 6) | value;
+            if (++charsInQuantum == 4) {
+                int bytesInQuantum = 3 - padding;
+                if (decodedLength + bytesInQuantum <= output.length) {
+                    output[decodedLength] = (byte) (bits >> 16);
+                    if (bytesInQuantum > 1) output[decodedLength + 1] = (byte) (bits >> 8);
+                    if (bytesInQuantum > 2) output[decodedLength + 2] = (byte) bits;
+                }
+                decodedLength += bytesInQuantum;
+                bits = 0;
+                charsInQuantum = 0;
+            }
+        }
+
+        if (charsInQuantum != 0 || decodedLength == 0) {
+            throw invalidEncoding(input);
+        }
+        return decodedLength;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\u000B';
+    }
+
+    private static SamlTransformationErrorException invalidEncoding(String input) {
+        SamlValidationSpecificationFailure failure = invalidBase64Encoding(input);
+        return new SamlTransformationErrorException(failure.getErrorMessage(), failure.getLogLevel());
+    }
+}
@@ -1,23 +1,13 @@
 package uk.gov.ida.saml.deserializers.validators;
 
-import net.shibboleth.utilities.java.support.codec.Base64Support;
-import org.apache.commons.codec.binary.StringUtils;
-import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
-import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
-
-import static java.util.regex.Pattern.matches;
-import static uk.gov.ida.saml.core.validation.errors.SamlTransformationErrorFactory.invalidBase64Encoding;
+import java.nio.charset.StandardCharsets;
 
 public class Base64StringDecoder {
 
     public String decode(String input) {
-        String withoutWhitespace = input.replaceAll("\\s", "");
-        if (!matches("^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$", withoutWhitespace)) {
-            SamlValidationSpecificationFailure failure = invalidBase64Encoding(input);
-            throw new SamlTransformationErrorException(failure.getErrorMessage(), failure.getLogLevel());
-        }
-
-        return StringUtils.newStringUtf8(Base64Support.decode(input));
+        byte[] decoded = new byte[Base64ByteDecoder.decodedLengthUpperBound(input)];
+        int decodedLength = Base64ByteDecoder.decodeInto(input, decoded);
+        return new String(decoded, 0, decodedLength, StandardCharsets.UTF_8);
     }
 
 }
@@ -3,6 +3,7 @@ package uk.gov.ida.saml.deserializers.validators;
 import com.google.inject.Inject;
 import uk.gov.ida.saml.hub.validators.StringSizeValidator;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class ResponseSizeValidator implements SizeValidator {
@@ -23,6 +24,11 @@ public class ResponseSizeValidator implements SizeValidator {
         validator.validate(Objects.requireNonNull(input, "input for response size validation cannot be null"), getLowerBound(), getUpperBound());
     }
 
+    @Override
+    public void validateBytes(ByteBuffer input) {
+        validator.validate(Objects.requireNonNull(input, "input for response size validation cannot be null").remaining(), getLowerBound(), getUpperBound());
+    }
+
     private int getUpperBound() {
         return UPPER_BOUND;
     }
@@ -1,6 +1,13 @@
 package uk.gov.ida.saml.deserializers.validators;
 
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public interface SizeValidator {
     void validate(String input);
+
+    default void validateBytes(ByteBuffer input) {
+        validate(new String(input.array(), input.arrayOffset() + input.position(), input.remaining(), StandardCharsets.UTF_8));
+    }
 }
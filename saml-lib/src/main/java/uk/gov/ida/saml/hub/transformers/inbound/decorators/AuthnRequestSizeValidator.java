@@ -4,6 +4,7 @@ import uk.gov.ida.saml.deserializers.validators.SizeValidator;
 import uk.gov.ida.saml.hub.validators.StringSizeValidator;
 
 import javax.inject.Inject;
+import java.nio.ByteBuffer;
 
 public class AuthnRequestSizeValidator implements SizeValidator {
 
@@ -21,4 +22,9 @@ public class AuthnRequestSizeValidator implements SizeValidator {
     public void validate(String input) {
         validator.validate(input,LOWER_BOUND, UPPER_BOUND);
     }
+
+    @Override
+    public void validateBytes(ByteBuffer input) {
+        validator.validate(input.remaining(), LOWER_BOUND, UPPER_BOUND);
+    }
 }
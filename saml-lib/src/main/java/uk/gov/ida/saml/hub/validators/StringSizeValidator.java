@@ -7,14 +7,18 @@ import uk.gov.ida.saml.hub.errors.SamlTransformationErrorFactory;
 public class StringSizeValidator {
 
     public void validate(String input, int lowerBound, int upperBound) {
+        validate(input.length(), lowerBound, upperBound);
+    }
+
+    public void validate(int length, int lowerBound, int upperBound) {
 
-        if(input.length() < lowerBound){
-            SamlValidationSpecificationFailure failure = SamlTransformationErrorFactory.stringTooSmall(input.length(), lowerBound);
+        if(length < lowerBound){
+            SamlValidationSpecificationFailure failure = SamlTransformationErrorFactory.stringTooSmall(length, lowerBound);
             throw new SamlTransformationErrorException(failure.getErrorMessage(), failure.getLogLevel());
         }
 
-        if(input.length() > upperBound){
-            SamlValidationSpecificationFailure failure = SamlTransformationErrorFactory.stringTooLarge(input.length(), upperBound);
+        if(length > upperBound){
+            SamlValidationSpecificationFailure failure = SamlTransformationErrorFactory.stringTooLarge(length, upperBound);
             throw new SamlTransformationErrorException(failure.getErrorMessage(), failure.getLogLevel());
         }
     }
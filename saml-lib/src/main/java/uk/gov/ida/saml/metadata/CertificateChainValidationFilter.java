@@ -1,24 +1,35 @@
 package uk.gov.ida.saml.metadata;
 
+import net.shibboleth.utilities.java.support.codec.Base64Support;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.security.x509.X509Support;
 import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.X509Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.ida.common.shared.security.verification.CertificateChainValidator;
 import uk.gov.ida.saml.metadata.exception.CertificateConversionException;
+import uk.gov.ida.saml.security.CertificateChainValidationCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 import javax.xml.namespace.QName;
 import java.security.KeyStore;
+import java.security.Principal;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.opensaml.xmlsec.keyinfo.KeyInfoSupport.getCertificates;
 
@@ -29,15 +40,53 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
     private final QName role;
     private final CertificateChainValidator certificateChainValidator;
     private final KeyStore keyStore;
+    private final CertificateChainValidationCache certificateChainValidationCache;
+    private final ForkJoinPool forkJoinPool;
 
     public CertificateChainValidationFilter(
         @NotNull final QName role,
         @NotNull final CertificateChainValidator certificateChainValidator,
         @NotNull final KeyStore keyStore) {
 
+        this(role, certificateChainValidator, keyStore, null);
+    }
+
+    /**
+     * The filter runs on every metadata refresh, when almost all certificates are unchanged, so with a cache valid
+     * chain validation results are kept between refreshes and each certificate is only parsed and validated again
+     * once its result expires. A trust store modified in place is not noticed until then, so a cache should only
+     * be used with trust stores that are replaced rather than modified, or be invalidated when they change.
+     *
+     * @param certificateChainValidationCache remembers chain validation results, or null to validate every time
+     */
+    public CertificateChainValidationFilter(
+        @NotNull final QName role,
+        @NotNull final CertificateChainValidator certificateChainValidator,
+        @NotNull final KeyStore keyStore,
+        @Nullable final CertificateChainValidationCache certificateChainValidationCache) {
+
+        this(role, certificateChainValidator, keyStore, certificateChainValidationCache, null);
+    }
+
+    /**
+     * Checks the certificates of each EntityDescriptor in an EntitiesDescriptor concurrently on the given pool,
+     * then removes untrusted descriptors and logs on the calling thread in document order, so the filtered
+     * metadata and log output are the same as when filtering serially.
+     *
+     * @param forkJoinPool the pool to check certificates on, or null to check them serially
+     */
+    public CertificateChainValidationFilter(
+        @NotNull final QName role,
+        @NotNull final CertificateChainValidator certificateChainValidator,
+        @NotNull final KeyStore keyStore,
+        @Nullable final CertificateChainValidationCache certificateChainValidationCache,
+        @Nullable final ForkJoinPool forkJoinPool) {
+
         this.role = role;
         this.certificateChainValidator = certificateChainValidator;
         this.keyStore = keyStore;
+        this.certificateChainValidationCache = certificateChainValidationCache;
+        this.forkJoinPool = forkJoinPool;
     }
 
     public QName getRole() {
@@ -52,6 +101,10 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         return keyStore;
     }
 
+    public Optional<CertificateChainValidationCache> getCertificateChainValidationCache() {
+        return Optional.ofNullable(certificateChainValidationCache);
+    }
+
     @Nullable
     @Override
     public XMLObject filter(@Nullable XMLObject metadata) {
@@ -59,10 +112,12 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
             return null;
         }
 
+        long validatedBefore = getCertificateChainValidationCache().map(CertificateChainValidationCache::getMisses).orElse(0L);
+        long reusedBefore = getCertificateChainValidationCache().map(CertificateChainValidationCache::getHits).orElse(0L);
         try {
             if (metadata instanceof EntityDescriptor) {
                 EntityDescriptor entityDescriptor = (EntityDescriptor) metadata;
-                filterOutUntrustedRoleDescriptors(entityDescriptor);
+                filterOutUntrustedRoleDescriptors(entityDescriptor, this::findUntrustedCertificate);
                 if (entityDescriptor.getRoleDescriptors().isEmpty()) {
                     LOG.warn("EntityDescriptor '{}' has empty role descriptor list, metadata will be filtered out", entityDescriptor.getEntityID());
                     return null;
@@ -81,6 +136,12 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         } catch (CertificateConversionException e) {
             LOG.error("Saw fatal error validating certificate chain, metadata will be filtered out", e);
             return null;
+        } finally {
+            getCertificateChainValidationCache().ifPresent(cache -> LOG.info(
+                "Certificate chain validation for {}: {} certificates validated, {} results reused",
+                getRole().getLocalPart(),
+                cache.getMisses() - validatedBefore,
+                cache.getHits() - reusedBefore));
         }
 
         return metadata;
@@ -94,9 +155,13 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         // so just note them in a set and then remove after iteration has completed.
         final HashSet<XMLObject> toRemove = new HashSet<>();
 
+        final UntrustedCertificateCheck untrustedCertificateCheck = forkJoinPool != null
+            ? checkConcurrently(entitiesDescriptor.getEntityDescriptors())
+            : this::findUntrustedCertificate;
+
         entitiesDescriptor.getEntityDescriptors().forEach(
         entityDescriptor -> {
-            filterOutUntrustedRoleDescriptors(entityDescriptor);
+            filterOutUntrustedRoleDescriptors(entityDescriptor, untrustedCertificateCheck);
             if (entityDescriptor.getRoleDescriptors().isEmpty()) {
                 LOG.warn("EntityDescriptor '{}' has empty role descriptor list, removing from metadata", entityDescriptor.getEntityID());
                 toRemove.add(entityDescriptor);
@@ -110,7 +175,37 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
     }
 
 
-    private void filterOutUntrustedRoleDescriptors(@Nonnull EntityDescriptor entityDescriptor) {
+    /**
+     * Checks every key descriptor of the role concurrently. Only XMLObject fields are read here; the DOM is
+     * neither read nor modified, and nothing is logged until the results are applied.
+     */
+    private UntrustedCertificateCheck checkConcurrently(@Nonnull List<EntityDescriptor> entityDescriptors) {
+        final Map<KeyDescriptor, CheckResult> results = new ConcurrentHashMap<>();
+        forkJoinPool.submit(() -> entityDescriptors.parallelStream()
+            .flatMap(entityDescriptor -> entityDescriptor.getRoleDescriptors().stream())
+            .filter(roleDescriptor -> getRole().equals(roleDescriptor.getElementQName()))
+            .flatMap(roleDescriptor -> roleDescriptor.getKeyDescriptors().stream())
+            .forEach(keyDescriptor -> results.put(keyDescriptor, check(keyDescriptor)))
+        ).join();
+
+        return keyDescriptor -> {
+            CheckResult result = results.get(keyDescriptor);
+            if (result.exception != null) {
+                throw result.exception;
+            }
+            return result.untrustedCertificateSubject;
+        };
+    }
+
+    private CheckResult check(@Nonnull KeyDescriptor keyDescriptor) {
+        try {
+            return new CheckResult(findUntrustedCertificate(keyDescriptor), null);
+        } catch (CertificateException e) {
+            return new CheckResult(Optional.empty(), e);
+        }
+    }
+
+    private void filterOutUntrustedRoleDescriptors(@Nonnull EntityDescriptor entityDescriptor, @Nonnull UntrustedCertificateCheck untrustedCertificateCheck) {
         final String entityID = entityDescriptor.getEntityID();
         LOG.trace("Processing EntityDescriptor: {}", entityID);
 
@@ -119,7 +214,7 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         entityDescriptor.getRoleDescriptors()
             .removeIf(roleDescriptor -> {
                 if (getRole().equals(roleDescriptor.getElementQName())) {
-                    filterOutUntrustedKeyDescriptors(roleDescriptor);
+                    filterOutUntrustedKeyDescriptors(roleDescriptor, untrustedCertificateCheck);
                     if (roleDescriptor.getKeyDescriptors().isEmpty()) {
                         LOG.warn("KeyDescriptor '{}' has empty key descriptor list, removing from metadata", entityID);
                         return true;
@@ -129,18 +224,13 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
             });
     }
 
-    private void filterOutUntrustedKeyDescriptors(@Nonnull RoleDescriptor roleDescriptor) {
+    private void filterOutUntrustedKeyDescriptors(@Nonnull RoleDescriptor roleDescriptor, @Nonnull UntrustedCertificateCheck untrustedCertificateCheck) {
         roleDescriptor.getKeyDescriptors().removeIf(
             keyDescriptor -> {
-                KeyInfo keyInfo = keyDescriptor.getKeyInfo();
                 try {
-                    for (final X509Certificate certificate : getCertificates(keyInfo)) {
-                        if (!getCertificateChainValidator().validate(certificate, getKeyStore()).isValid()) {
-                            LOG.warn("Certificate chain validation failed for metadata entry {}", certificate.getSubjectDN());
-                            return true;
-                        }
-                    }
-                    return false;
+                    Optional<Principal> untrustedCertificateSubject = untrustedCertificateCheck.findUntrustedCertificate(keyDescriptor);
+                    untrustedCertificateSubject.ifPresent(subject -> LOG.warn("Certificate chain validation failed for metadata entry {}", subject));
+                    return untrustedCertificateSubject.isPresent();
                 } catch (CertificateException e) {
                     throw new CertificateConversionException(e);
                 }
@@ -148,6 +238,38 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         );
     }
 
+    private Optional<Principal> findUntrustedCertificate(@Nonnull KeyDescriptor keyDescriptor) throws CertificateException {
+        KeyInfo keyInfo = keyDescriptor.getKeyInfo();
+        return certificateChainValidationCache != null ? findUntrustedCertificateUsingCache(keyInfo) : findUntrustedCertificate(keyInfo);
+    }
+
+    private Optional<Principal> findUntrustedCertificate(@Nullable KeyInfo keyInfo) throws CertificateException {
+        for (final X509Certificate certificate : getCertificates(keyInfo)) {
+            if (!getCertificateChainValidator().validate(certificate, getKeyStore()).isValid()) {
+                return Optional.of(certificate.getSubjectDN());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Principal> findUntrustedCertificateUsingCache(@Nullable KeyInfo keyInfo) throws CertificateException {
+        if (keyInfo == null) {
+            return Optional.empty();
+        }
+        for (final X509Data x509Data : keyInfo.getX509Datas()) {
+            for (final org.opensaml.xmlsec.signature.X509Certificate xmlCertificate : x509Data.getX509Certificates()) {
+                if (xmlCertificate.getValue() == null) {
+                    continue;
+                }
+                byte[] encodedCertificate = Base64Support.decode(xmlCertificate.getValue());
+                if (!certificateChainValidationCache.validate(getCertificateChainValidator(), encodedCertificate, getKeyStore()).isValid()) {
+                    return Optional.of(X509Support.decodeCertificate(encodedCertificate).getSubjectDN());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
     private String getGroupName(final EntitiesDescriptor group) {
         String name = group.getName();
         if (name != null) {
@@ -159,4 +281,19 @@ public final class CertificateChainValidationFilter implements MetadataFilter {
         }
         return "(unnamed)";
     }
+
+    @FunctionalInterface
+    private interface UntrustedCertificateCheck {
+        Optional<Principal> findUntrustedCertificate(KeyDescriptor keyDescriptor) throws CertificateException;
+    }
+
+    private static class CheckResult {
+        private final Optional<Principal> untrustedCertificateSubject;
+        private final CertificateException exception;
+
+        private CheckResult(Optional<Principal> untrustedCertificateSubject, CertificateException exception) {
+            this.untrustedCertificateSubject = untrustedCertificateSubject;
+            this.exception = exception;
+        }
+    }
 }
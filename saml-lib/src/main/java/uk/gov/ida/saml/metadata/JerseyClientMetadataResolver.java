@@ -1,28 +1,174 @@
 package uk.gov.ida.saml.metadata;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Timer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Fetches metadata with a conditional GET, sending the ETag and Last-Modified of the last metadata that was
+ * successfully processed. When the server answers 304 Not Modified the resolver keeps its current metadata
+ * without parsing or filtering it again. With {@link #setSkipUnchangedContent(boolean)} the same is done when
+ * the fetched bytes have the same SHA-256 digest as the last metadata processed, for servers that do not
+ * support conditional requests.
+ *
+ * Filters such as {@link ExpiredCertificateMetadataFilter} depend on the time as well as the content, so
+ * unchanged metadata is still fully processed once the full processing interval has passed.
+ */
 public class JerseyClientMetadataResolver extends AbstractReloadingMetadataResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(JerseyClientMetadataResolver.class);
+    private static final long DEFAULT_FULL_PROCESSING_INTERVAL = 600000L;
+
     private final Client client;
     private final URI metadataUri;
 
+    private String eTag;
+    private String lastModified;
+    private HashCode digest;
+    private long processedAt;
+    private String fetchedETag;
+    private String fetchedLastModified;
+    private HashCode fetchedDigest;
+
+    private boolean skipUnchangedContent;
+    private long fullProcessingInterval = DEFAULT_FULL_PROCESSING_INTERVAL;
+    private float refreshDelayJitter;
+    private final LongAdder skippedRefreshes = new LongAdder();
+    private final LongAdder processedRefreshes = new LongAdder();
+
     public JerseyClientMetadataResolver(Timer timer, Client client, URI metadataUri) {
         super(timer);
         this.client = client;
         this.metadataUri = metadataUri;
     }
 
+    public boolean isSkipUnchangedContent() {
+        return skipUnchangedContent;
+    }
+
+    public void setSkipUnchangedContent(boolean skipUnchangedContent) {
+        this.skipUnchangedContent = skipUnchangedContent;
+    }
+
+    public long getFullProcessingInterval() {
+        return fullProcessingInterval;
+    }
+
+    /**
+     * @param fullProcessingInterval how long, in milliseconds, metadata may go unprocessed because it is unchanged
+     */
+    public void setFullProcessingInterval(long fullProcessingInterval) {
+        this.fullProcessingInterval = fullProcessingInterval;
+    }
+
+    public float getRefreshDelayJitter() {
+        return refreshDelayJitter;
+    }
+
+    /**
+     * Resolvers sharing a timer and refreshing on the same schedule would otherwise all fetch their metadata
+     * at once; with jitter each refresh happens up to the given fraction of its delay early, but never sooner
+     * than the minimum refresh delay.
+     *
+     * @param refreshDelayJitter a fraction between 0 (no jitter) and 1
+     */
+    public void setRefreshDelayJitter(float refreshDelayJitter) {
+        if (refreshDelayJitter < 0 || refreshDelayJitter > 1) {
+            throw new IllegalArgumentException("Refresh delay jitter must be between 0 and 1");
+        }
+        this.refreshDelayJitter = refreshDelayJitter;
+    }
+
+    /**
+     * @return the number of refreshes where the metadata was unchanged, so was not parsed or filtered again
+     */
+    public long getSkippedRefreshes() {
+        return skippedRefreshes.sum();
+    }
+
+    /**
+     * @return the number of refreshes where new metadata was parsed and filtered
+     */
+    public long getProcessedRefreshes() {
+        return processedRefreshes.sum();
+    }
+
     @Override
     protected String getMetadataIdentifier() {
         return metadataUri.toString();
     }
 
     @Override
-    protected byte[] fetchMetadata() {
-        return client.target(metadataUri).request().get(String.class).getBytes();
+    protected long computeNextRefreshDelay(DateTime expectedExpiration) {
+        long refreshDelay = super.computeNextRefreshDelay(expectedExpiration);
+        long jitter = (long) (refreshDelay * refreshDelayJitter);
+        if (jitter <= 0) {
+            return refreshDelay;
+        }
+        return Math.max(getMinRefreshDelay(), refreshDelay - ThreadLocalRandom.current().nextLong(jitter + 1));
+    }
+
+    @Override
+    protected byte[] fetchMetadata() throws ResolverException {
+        boolean mayReuseProcessedMetadata = DateTimeUtils.currentTimeMillis() - processedAt < fullProcessingInterval;
+        Invocation.Builder request = client.target(metadataUri).request();
+        if (mayReuseProcessedMetadata && eTag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        if (mayReuseProcessedMetadata && lastModified != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        Response response = request.get();
+        try {
+            if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                LOG.debug("Metadata from '{}' has not changed since the last refresh", metadataUri);
+                skippedRefreshes.increment();
+                return null;
+            }
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new ResolverException("Unable to fetch metadata from '" + metadataUri + "', status " + response.getStatus());
+            }
+            fetchedETag = response.getHeaderString(HttpHeaders.ETAG);
+            fetchedLastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+            byte[] metadata = inputstreamToByteArray(response.readEntity(InputStream.class));
+            fetchedDigest = Hashing.sha256().hashBytes(metadata);
+            if (skipUnchangedContent && mayReuseProcessedMetadata && fetchedDigest.equals(digest)) {
+                LOG.debug("Metadata from '{}' has the same content as at the last refresh", metadataUri);
+                skippedRefreshes.increment();
+                return null;
+            }
+            return metadata;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * The validators and digest of a response are only used on later refreshes once its metadata has been
+     * processed, so metadata that failed to process is processed in full again on the next refresh.
+     */
+    @Override
+    protected void processNewMetadata(String metadataIdentifier, DateTime refreshStart, byte[] metadataBytes) throws ResolverException {
+        super.processNewMetadata(metadataIdentifier, refreshStart, metadataBytes);
+        eTag = fetchedETag;
+        lastModified = fetchedLastModified;
+        digest = fetchedDigest;
+        processedAt = DateTimeUtils.currentTimeMillis();
+        processedRefreshes.increment();
     }
 }
@@ -1,5 +1,6 @@
 package uk.gov.ida.saml.metadata;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.client.JerseyClientConfiguration;
 
 import java.net.URI;
@@ -26,6 +27,13 @@ public abstract class MetadataConfiguration implements MetadataResolverConfigura
     private String jerseyClientName;
     private String hubFederationId;
 
+    /*
+     * Skip parsing and filtering metadata whose content is the same as at the last refresh.
+     * Used to set {@link uk.gov.ida.saml.metadata.JerseyClientMetadataResolver#setSkipUnchangedContent(boolean)}
+     */
+    @JsonProperty
+    private boolean skipUnchangedMetadata;
+
     public MetadataConfiguration(URI uri,
         Long minRefreshDelay,
         Long maxRefreshDelay,
@@ -77,4 +85,9 @@ public abstract class MetadataConfiguration implements MetadataResolverConfigura
     public String getHubFederationId() {
         return hubFederationId;
     }
+
+    @Override
+    public boolean isSkipUnchangedMetadata() {
+        return skipUnchangedMetadata;
+    }
 }
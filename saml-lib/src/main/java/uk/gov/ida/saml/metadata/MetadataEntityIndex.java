@@ -0,0 +1,228 @@
+package uk.gov.ida.saml.metadata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.opensaml.saml.metadata.IterableMetadataSource;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.common.SAML2Support;
+import org.opensaml.saml.saml2.metadata.Endpoint;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.MutableCredential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An index of the metadata held by a resolver, from entity id and role to the credentials and endpoints of that
+ * role, built once each time the resolver loads new metadata.
+ *
+ * Readers use an immutable snapshot and never lock. The first reader to see that the resolver has loaded new
+ * metadata rebuilds the index; other readers keep using the previous snapshot until it is ready. As when resolving
+ * through the resolver itself, a role is only returned while it and its entity are within their validUntil.
+ */
+public class MetadataEntityIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataEntityIndex.class);
+
+    private final MetadataResolver metadataResolver;
+    private final KeyInfoCredentialResolver keyInfoCredentialResolver;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    public MetadataEntityIndex(MetadataResolver metadataResolver) {
+        this(metadataResolver, DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver());
+    }
+
+    /**
+     * @param metadataResolver a resolver that can list its entities, such as any batch resolver
+     */
+    public MetadataEntityIndex(MetadataResolver metadataResolver, KeyInfoCredentialResolver keyInfoCredentialResolver) {
+        if (!(metadataResolver instanceof IterableMetadataSource)) {
+            throw new IllegalArgumentException("Metadata resolver must be able to list its entities to be indexed");
+        }
+        this.metadataResolver = metadataResolver;
+        this.keyInfoCredentialResolver = keyInfoCredentialResolver;
+    }
+
+    public Optional<Role> getRole(String entityId, QName role) {
+        Map<QName, Role> roles = currentSnapshot().entities.get(entityId);
+        if (roles == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(roles.get(role)).filter(Role::isValid);
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        DateTime lastUpdate = getLastUpdate();
+        if (current != null && Objects.equals(current.lastUpdate, lastUpdate)) {
+            return current;
+        }
+        if (current == null) {
+            Snapshot built = build(lastUpdate);
+            snapshot = built;
+            return built;
+        }
+        if (rebuilding.compareAndSet(false, true)) {
+            try {
+                current = build(lastUpdate);
+                snapshot = current;
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+        return current;
+    }
+
+    private DateTime getLastUpdate() {
+        return metadataResolver instanceof RefreshableMetadataResolver ? ((RefreshableMetadataResolver) metadataResolver).getLastUpdate() : null;
+    }
+
+    private Snapshot build(DateTime lastUpdate) {
+        Map<String, Map<QName, List<RoleDescriptor>>> roleDescriptors = new LinkedHashMap<>();
+        for (EntityDescriptor entityDescriptor : (IterableMetadataSource) metadataResolver) {
+            String entityId = entityDescriptor.getEntityID();
+            if (roleDescriptors.containsKey(entityId)) {
+                continue;
+            }
+            Map<QName, List<RoleDescriptor>> roles = new LinkedHashMap<>();
+            roleDescriptors.put(entityId, roles);
+            for (RoleDescriptor roleDescriptor : entityDescriptor.getRoleDescriptors()) {
+                roles.computeIfAbsent(roleDescriptor.getElementQName(), role -> new ArrayList<>()).add(roleDescriptor);
+                QName schemaType = roleDescriptor.getSchemaType();
+                if (schemaType != null && !schemaType.equals(roleDescriptor.getElementQName())) {
+                    roles.computeIfAbsent(schemaType, role -> new ArrayList<>()).add(roleDescriptor);
+                }
+            }
+        }
+
+        ImmutableMap.Builder<String, ImmutableMap<QName, Role>> entities = ImmutableMap.builder();
+        roleDescriptors.forEach((entityId, roles) -> {
+            ImmutableMap.Builder<QName, Role> indexedRoles = ImmutableMap.builder();
+            roles.forEach((role, descriptors) -> indexedRoles.put(role, newRole(entityId, descriptors)));
+            entities.put(entityId, indexedRoles.build());
+        });
+        return new Snapshot(lastUpdate, entities.build());
+    }
+
+    private Role newRole(String entityId, List<RoleDescriptor> roleDescriptors) {
+        ImmutableList.Builder<Credential> signingCredentials = ImmutableList.builder();
+        ImmutableList.Builder<Credential> encryptionCredentials = ImmutableList.builder();
+        ImmutableList.Builder<Credential> credentials = ImmutableList.builder();
+        ImmutableList.Builder<Endpoint> endpoints = ImmutableList.builder();
+        for (RoleDescriptor roleDescriptor : roleDescriptors) {
+            for (KeyDescriptor keyDescriptor : roleDescriptor.getKeyDescriptors()) {
+                UsageType usage = keyDescriptor.getUse() == null ? UsageType.UNSPECIFIED : keyDescriptor.getUse();
+                for (Credential credential : resolveCredentials(entityId, keyDescriptor, usage)) {
+                    credentials.add(credential);
+                    if (usage != UsageType.ENCRYPTION) {
+                        signingCredentials.add(credential);
+                    }
+                    if (usage != UsageType.SIGNING) {
+                        encryptionCredentials.add(credential);
+                    }
+                }
+            }
+            endpoints.addAll(roleDescriptor.getEndpoints());
+        }
+        return new Role(roleDescriptors, credentials.build(), signingCredentials.build(), encryptionCredentials.build(), endpoints.build());
+    }
+
+    private List<Credential> resolveCredentials(String entityId, KeyDescriptor keyDescriptor, UsageType usage) {
+        List<Credential> credentials = new ArrayList<>();
+        if (keyDescriptor.getKeyInfo() == null) {
+            return credentials;
+        }
+        try {
+            for (Credential credential : keyInfoCredentialResolver.resolve(new CriteriaSet(new KeyInfoCriterion(keyDescriptor.getKeyInfo())))) {
+                if (credential instanceof MutableCredential) {
+                    MutableCredential mutableCredential = (MutableCredential) credential;
+                    mutableCredential.setEntityId(entityId);
+                    mutableCredential.setUsageType(usage);
+                }
+                credential.getCredentialContextSet().add(new SAMLMDCredentialContext(keyDescriptor));
+                credentials.add(credential);
+            }
+        } catch (ResolverException e) {
+            LOG.warn("Unable to resolve credentials from a key descriptor of {}", entityId, e);
+        }
+        return credentials;
+    }
+
+    /**
+     * The credentials and endpoints of every role descriptor of one type for an entity.
+     */
+    public static class Role {
+        private final List<RoleDescriptor> roleDescriptors;
+        private final List<Credential> credentials;
+        private final List<Credential> signingCredentials;
+        private final List<Credential> encryptionCredentials;
+        private final List<Endpoint> endpoints;
+
+        private Role(List<RoleDescriptor> roleDescriptors, List<Credential> credentials, List<Credential> signingCredentials,
+                     List<Credential> encryptionCredentials, List<Endpoint> endpoints) {
+            this.roleDescriptors = ImmutableList.copyOf(roleDescriptors);
+            this.credentials = credentials;
+            this.signingCredentials = signingCredentials;
+            this.encryptionCredentials = encryptionCredentials;
+            this.endpoints = endpoints;
+        }
+
+        public List<Credential> getCredentials() {
+            return credentials;
+        }
+
+        /**
+         * @return the credentials of keys for signing or of unspecified use
+         */
+        public List<Credential> getSigningCredentials() {
+            return signingCredentials;
+        }
+
+        /**
+         * @return the credentials of keys for encryption or of unspecified use
+         */
+        public List<Credential> getEncryptionCredentials() {
+            return encryptionCredentials;
+        }
+
+        public List<Endpoint> getEndpoints() {
+            return endpoints;
+        }
+
+        private boolean isValid() {
+            // also checks the entity and any enclosing entities descriptors
+            return roleDescriptors.stream().allMatch(SAML2Support::isValid);
+        }
+    }
+
+    private static class Snapshot {
+        private final DateTime lastUpdate;
+        private final ImmutableMap<String, ImmutableMap<QName, Role>> entities;
+
+        private Snapshot(DateTime lastUpdate, ImmutableMap<String, ImmutableMap<QName, Role>> entities) {
+            this.lastUpdate = lastUpdate;
+            this.entities = entities;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.gov.ida.saml.metadata;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.credential.impl.AbstractCriteriaFilteringCredentialResolver;
+import org.opensaml.security.criteria.UsageCriterion;
+
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * Resolves the credentials of an entity in a role from a {@link MetadataEntityIndex}, in place of OpenSAML's
+ * {@code MetadataCredentialResolver}. Like that resolver it requires an {@link EntityIdCriterion} and an
+ * {@link EntityRoleCriterion}, and the credentials found are then filtered by any other evaluable criteria.
+ */
+public class MetadataEntityIndexCredentialResolver extends AbstractCriteriaFilteringCredentialResolver {
+
+    private final MetadataEntityIndex metadataEntityIndex;
+
+    public MetadataEntityIndexCredentialResolver(MetadataEntityIndex metadataEntityIndex) {
+        this.metadataEntityIndex = metadataEntityIndex;
+    }
+
+    @Override
+    protected Iterable<Credential> resolveFromSource(CriteriaSet criteriaSet) throws ResolverException {
+        EntityIdCriterion entityIdCriterion = criteriaSet.get(EntityIdCriterion.class);
+        EntityRoleCriterion entityRoleCriterion = criteriaSet.get(EntityRoleCriterion.class);
+        if (entityIdCriterion == null || entityRoleCriterion == null) {
+            throw new ResolverException("Entity id and role criteria are required to resolve credentials from metadata");
+        }
+        UsageCriterion usageCriterion = criteriaSet.get(UsageCriterion.class);
+        UsageType usage = usageCriterion == null ? UsageType.UNSPECIFIED : usageCriterion.getUsage();
+
+        Optional<MetadataEntityIndex.Role> role = metadataEntityIndex.getRole(entityIdCriterion.getEntityId(), entityRoleCriterion.getRole());
+        if (!role.isPresent()) {
+            return Collections.emptyList();
+        }
+        switch (usage) {
+            case SIGNING:
+                return role.get().getSigningCredentials();
+            case ENCRYPTION:
+                return role.get().getEncryptionCredentials();
+            default:
+                return role.get().getCredentials();
+        }
+    }
+}
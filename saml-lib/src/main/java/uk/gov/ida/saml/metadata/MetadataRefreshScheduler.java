@@ -0,0 +1,122 @@
+package uk.gov.ida.saml.metadata;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Timer} that runs its tasks on a {@link ScheduledExecutorService}, for sharing between resolvers built on
+ * OpenSAML's {@code AbstractReloadingMetadataResolver}, which can only schedule refreshes on a timer.
+ *
+ * A plain timer shared between resolvers stops for all of them as soon as one task throws, which happens when a
+ * resolver is destroyed during its refresh and reschedules its cancelled task. Here a task that throws is logged
+ * and the other resolvers carry on refreshing. Only one-off tasks are supported, as a cancelled {@link TimerTask}
+ * cannot be told apart from a live one; the resolvers check whether they have been destroyed before refreshing.
+ */
+public class MetadataRefreshScheduler extends Timer {
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataRefreshScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final boolean shared;
+
+    public MetadataRefreshScheduler(ScheduledExecutorService executor) {
+        this(executor, false);
+    }
+
+    private MetadataRefreshScheduler(ScheduledExecutorService executor, boolean shared) {
+        // every Timer constructor starts a thread, and OpenSAML needs a Timer; stop it at once, as it is never used
+        super("metadata-refresh-unused-timer", true);
+        super.cancel();
+        this.executor = executor;
+        this.shared = shared;
+    }
+
+    public static MetadataRefreshScheduler singleThreaded() {
+        return new MetadataRefreshScheduler(singleThreadedExecutor(), false);
+    }
+
+    /**
+     * @return a single threaded scheduler for sharing across the process, which ignores {@link #cancel()}
+     */
+    public static MetadataRefreshScheduler sharedSingleThreaded() {
+        return new MetadataRefreshScheduler(singleThreadedExecutor(), true);
+    }
+
+    @Override
+    public void schedule(TimerTask task, long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Negative delay.");
+        }
+        try {
+            executor.schedule(() -> run(task), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Metadata refresh scheduler already cancelled", e);
+        }
+    }
+
+    @Override
+    public void schedule(TimerTask task, Date time) {
+        schedule(task, Math.max(0, time.getTime() - System.currentTimeMillis()));
+    }
+
+    @Override
+    public void schedule(TimerTask task, long delay, long period) {
+        throw new UnsupportedOperationException("Repeating tasks are not supported");
+    }
+
+    @Override
+    public void schedule(TimerTask task, Date firstTime, long period) {
+        throw new UnsupportedOperationException("Repeating tasks are not supported");
+    }
+
+    @Override
+    public void scheduleAtFixedRate(TimerTask task, long delay, long period) {
+        throw new UnsupportedOperationException("Repeating tasks are not supported");
+    }
+
+    @Override
+    public void scheduleAtFixedRate(TimerTask task, Date firstTime, long period) {
+        throw new UnsupportedOperationException("Repeating tasks are not supported");
+    }
+
+    /**
+     * Stops all scheduled tasks, unless this is the shared scheduler, which refreshes the metadata of every resolver
+     * in the process and so is never stopped.
+     */
+    @Override
+    public void cancel() {
+        if (shared) {
+            LOG.warn("Ignoring request to cancel the shared metadata refresh scheduler");
+            return;
+        }
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int purge() {
+        return 0;
+    }
+
+    private static ScheduledExecutorService singleThreadedExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("metadata-refresh-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private static void run(TimerTask task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOG.error("Scheduled metadata refresh failed", e);
+        }
+    }
+}
@@ -31,4 +31,8 @@ public interface MetadataResolverConfiguration {
     String getJerseyClientName();
 
     String getHubFederationId();
+
+    default boolean isSkipUnchangedMetadata() {
+        return false;
+    }
 }
@@ -0,0 +1,261 @@
+package uk.gov.ida.saml.metadata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.nimbusds.jose.jwk.JWK;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.DestructableComponent;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.metadata.factories.MetadataResolverFactory;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+
+import javax.ws.rs.client.Client;
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Keeps a metadata resolver and signature trust engine for each trust anchor, where the key id of the anchor is the
+ * entity id of the metadata and its certificate chain is trusted to sign that metadata.
+ *
+ * Lookups read an immutable snapshot of the resolvers keyed by entity id, so cost the same however many
+ * federations there are and never wait for a refresh. Refreshing the trust anchors builds a new snapshot,
+ * reusing the resolvers of anchors that have not changed, and destroys the resolvers no longer needed.
+ * The resolvers and the trust anchor refreshes all run on the refresh scheduler of the
+ * {@link MetadataResolverFactory}. Nothing is fetched until {@link #start()} is called.
+ */
+public class TrustAnchorMetadataResolverRepository implements MetadataResolverRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(TrustAnchorMetadataResolverRepository.class);
+
+    private final Supplier<List<JWK>> trustAnchorSupplier;
+    private final Function<String, URI> metadataUriForEntityId;
+    private final Client client;
+    private final MetadataResolverFactory metadataResolverFactory;
+    private final MetadataSignatureTrustEngineFactory metadataSignatureTrustEngineFactory = new MetadataSignatureTrustEngineFactory();
+    private final ExpiredCertificateMetadataFilter expiredCertificateMetadataFilter = new ExpiredCertificateMetadataFilter();
+    private final long minRefreshDelay;
+    private final long maxRefreshDelay;
+
+    private volatile Snapshot snapshot = new Snapshot(ImmutableMap.of(), ImmutableList.of());
+    private volatile boolean destroyed;
+    private boolean started;
+
+    /**
+     * @param trustAnchorSupplier supplies the current trust anchors; it is called on each refresh
+     * @param metadataUriForEntityId the location of the metadata for the entity id of a trust anchor
+     * @param maxRefreshDelay the longest delay between refreshes of the metadata, and the delay between refreshes
+     *                        of the trust anchors
+     */
+    public TrustAnchorMetadataResolverRepository(
+            Supplier<List<JWK>> trustAnchorSupplier,
+            Function<String, URI> metadataUriForEntityId,
+            Client client,
+            MetadataResolverFactory metadataResolverFactory,
+            long minRefreshDelay,
+            long maxRefreshDelay) {
+        this.trustAnchorSupplier = trustAnchorSupplier;
+        this.metadataUriForEntityId = metadataUriForEntityId;
+        this.client = client;
+        this.metadataResolverFactory = metadataResolverFactory;
+        this.minRefreshDelay = minRefreshDelay;
+        this.maxRefreshDelay = maxRefreshDelay;
+    }
+
+    /**
+     * Fetches the trust anchors, creates their resolvers and schedules the trust anchors to be refreshed.
+     */
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Trust anchor metadata resolver repository already started");
+        }
+        started = true;
+        refresh();
+        scheduleRefresh();
+    }
+
+    @Override
+    public Optional<MetadataResolver> getMetadataResolver(String entityId) {
+        return Optional.ofNullable(snapshot.federations.get(entityId)).map(federation -> federation.metadataResolver);
+    }
+
+    @Override
+    public List<String> getResolverEntityIds() {
+        return snapshot.resolverEntityIds;
+    }
+
+    @Override
+    public Optional<ExplicitKeySignatureTrustEngine> getSignatureTrustEngine(String entityId) {
+        return Optional.ofNullable(snapshot.federations.get(entityId)).map(federation -> federation.signatureTrustEngine);
+    }
+
+    @Override
+    public Map<String, MetadataResolver> getMetadataResolvers() {
+        return snapshot.metadataResolvers;
+    }
+
+    /**
+     * @return the entity ids of every trust anchor last fetched, including those whose resolver could not be created
+     */
+    @Override
+    public List<String> getTrustAnchorsEntityIds() {
+        return snapshot.trustAnchorEntityIds;
+    }
+
+    /**
+     * Fetches the trust anchors and updates the resolvers to match. If the trust anchors cannot be fetched the
+     * current resolvers are kept; a trust anchor whose resolver cannot be created is left out until the next refresh.
+     */
+    @Override
+    public synchronized void refresh() {
+        if (destroyed) {
+            return;
+        }
+        List<JWK> trustAnchors;
+        try {
+            trustAnchors = trustAnchorSupplier.get();
+        } catch (RuntimeException e) {
+            LOG.error("Unable to fetch trust anchors, keeping the current metadata resolvers", e);
+            return;
+        }
+
+        Snapshot current = snapshot;
+        Map<String, Federation> federations = new HashMap<>();
+        Set<String> trustAnchorEntityIds = new LinkedHashSet<>();
+        for (JWK trustAnchor : trustAnchors) {
+            String entityId = trustAnchor.getKeyID();
+            if (entityId != null && !trustAnchorEntityIds.add(entityId)) {
+                LOG.error("Ignoring duplicate trust anchor {}", entityId);
+                continue;
+            }
+            Federation existing = current.federations.get(entityId);
+            if (existing != null && existing.trustAnchor.equals(trustAnchor)) {
+                federations.put(entityId, existing);
+            } else {
+                createFederation(entityId, trustAnchor).ifPresent(federation -> federations.put(entityId, federation));
+            }
+        }
+        snapshot = new Snapshot(ImmutableMap.copyOf(federations), ImmutableList.copyOf(trustAnchorEntityIds));
+
+        current.federations.values().stream()
+                .filter(federation -> federations.get(federation.trustAnchor.getKeyID()) != federation)
+                .forEach(Federation::destroy);
+    }
+
+    @Override
+    public List<X509Certificate> sortCertsByDate(JWK trustAnchor) {
+        List<X509Certificate> certificates = trustAnchor.getParsedX509CertChain();
+        if (certificates == null) {
+            return ImmutableList.of();
+        }
+        return certificates.stream()
+                .sorted(Comparator.comparing(X509Certificate::getNotBefore))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stops refreshing the trust anchors and destroys every resolver.
+     */
+    public synchronized void destroy() {
+        destroyed = true;
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(ImmutableMap.of(), ImmutableList.of());
+        current.federations.values().forEach(Federation::destroy);
+    }
+
+    private Optional<Federation> createFederation(String entityId, JWK trustAnchor) {
+        if (entityId == null) {
+            LOG.error("Ignoring trust anchor without a key id");
+            return Optional.empty();
+        }
+        try {
+            MetadataResolver metadataResolver = metadataResolverFactory.create(
+                    client,
+                    metadataUriForEntityId.apply(entityId),
+                    getMetadataFilters(trustAnchor),
+                    minRefreshDelay,
+                    maxRefreshDelay);
+            ExplicitKeySignatureTrustEngine signatureTrustEngine = metadataSignatureTrustEngineFactory.createSignatureTrustEngine(metadataResolver);
+            return Optional.of(new Federation(trustAnchor, metadataResolver, signatureTrustEngine));
+        } catch (ComponentInitializationException | GeneralSecurityException | IOException | RuntimeException e) {
+            LOG.error("Unable to create metadata resolver for trust anchor {}", entityId, e);
+            return Optional.empty();
+        }
+    }
+
+    private List<MetadataFilter> getMetadataFilters(JWK trustAnchor) throws GeneralSecurityException, IOException {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        List<X509Certificate> certificates = sortCertsByDate(trustAnchor);
+        for (int i = 0; i < certificates.size(); i++) {
+            trustStore.setCertificateEntry("certificate-" + i, certificates.get(i));
+        }
+        return asList(new PKIXSignatureValidationFilterProvider(trustStore).get(), expiredCertificateMetadataFilter);
+    }
+
+    private void scheduleRefresh() {
+        metadataResolverFactory.getRefreshScheduler().schedule(new TimerTask() {
+            @Override
+            public void run() {
+                if (!destroyed) {
+                    try {
+                        refresh();
+                    } finally {
+                        scheduleRefresh();
+                    }
+                }
+            }
+        }, maxRefreshDelay);
+    }
+
+    private static class Federation {
+        private final JWK trustAnchor;
+        private final MetadataResolver metadataResolver;
+        private final ExplicitKeySignatureTrustEngine signatureTrustEngine;
+
+        private Federation(JWK trustAnchor, MetadataResolver metadataResolver, ExplicitKeySignatureTrustEngine signatureTrustEngine) {
+            this.trustAnchor = trustAnchor;
+            this.metadataResolver = metadataResolver;
+            this.signatureTrustEngine = signatureTrustEngine;
+        }
+
+        private void destroy() {
+            if (metadataResolver instanceof DestructableComponent) {
+                ((DestructableComponent) metadataResolver).destroy();
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final ImmutableMap<String, Federation> federations;
+        private final ImmutableMap<String, MetadataResolver> metadataResolvers;
+        private final ImmutableList<String> resolverEntityIds;
+        private final ImmutableList<String> trustAnchorEntityIds;
+
+        private Snapshot(ImmutableMap<String, Federation> federations, ImmutableList<String> trustAnchorEntityIds) {
+            this.federations = federations;
+            this.metadataResolvers = ImmutableMap.copyOf(federations.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().metadataResolver)));
+            this.resolverEntityIds = federations.keySet().asList();
+            this.trustAnchorEntityIds = trustAnchorEntityIds;
+        }
+    }
+}
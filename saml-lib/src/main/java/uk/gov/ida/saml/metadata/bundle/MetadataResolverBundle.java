@@ -8,6 +8,7 @@ import net.shibboleth.utilities.java.support.component.ComponentInitializationEx
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.security.impl.MetadataCredentialResolver;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.metadata.JerseyClientMetadataResolver;
 import uk.gov.ida.saml.metadata.MetadataHealthCheck;
 import uk.gov.ida.saml.metadata.MetadataResolverConfiguration;
 import uk.gov.ida.saml.metadata.exception.MetadataResolverCreationException;
@@ -19,10 +20,12 @@ import javax.annotation.Nullable;
 import javax.inject.Provider;
 import java.util.Optional;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class MetadataResolverBundle<T extends Configuration> implements io.dropwizard.ConfiguredBundle<T> {
     private final MetadataConfigurationExtractor<T> configExtractor;
     private MetadataResolver metadataResolver;
-    private DropwizardMetadataResolverFactory dropwizardMetadataResolverFactory = new DropwizardMetadataResolverFactory();
+    private final DropwizardMetadataResolverFactory dropwizardMetadataResolverFactory;
     private ExplicitKeySignatureTrustEngine signatureTrustEngine;
     private MetadataCredentialResolver credentialResolver;
     private final boolean validateSignatures;
@@ -32,8 +35,13 @@ public class MetadataResolverBundle<T extends Configuration> implements io.dropw
     }
 
     public MetadataResolverBundle(MetadataConfigurationExtractor<T> configExtractor, boolean validateSignatures) {
+        this(configExtractor, validateSignatures, new DropwizardMetadataResolverFactory());
+    }
+
+    public MetadataResolverBundle(MetadataConfigurationExtractor<T> configExtractor, boolean validateSignatures, DropwizardMetadataResolverFactory dropwizardMetadataResolverFactory) {
         this.configExtractor = configExtractor;
         this.validateSignatures = validateSignatures;
+        this.dropwizardMetadataResolverFactory = dropwizardMetadataResolverFactory;
     }
 
     @Override
@@ -52,6 +60,12 @@ public class MetadataResolverBundle<T extends Configuration> implements io.dropw
                     mc.getExpectedEntityId()
             );
             environment.healthChecks().register(mc.getUri().toString(), healthCheck);
+
+            if (metadataResolver instanceof JerseyClientMetadataResolver) {
+                JerseyClientMetadataResolver refreshingResolver = (JerseyClientMetadataResolver) metadataResolver;
+                environment.metrics().gauge(name(JerseyClientMetadataResolver.class, mc.getUri().toString(), "skippedRefreshes"), () -> refreshingResolver::getSkippedRefreshes);
+                environment.metrics().gauge(name(JerseyClientMetadataResolver.class, mc.getUri().toString(), "processedRefreshes"), () -> refreshingResolver::getProcessedRefreshes);
+            }
         });
     }
 
@@ -24,11 +24,22 @@ import java.util.Optional;
 import static java.util.Collections.emptyList;
 
 public class DropwizardMetadataResolverFactory {
-    private final MetadataResolverFactory metadataResolverFactory = new MetadataResolverFactory();
+    private final MetadataResolverFactory metadataResolverFactory;
     private final ExpiredCertificateMetadataFilter expiredCertificateMetadataFilter = new ExpiredCertificateMetadataFilter();
     private final MetadataClientFactory metadataClientFactory = new MetadataClientFactory();
     private final CertificateChainValidator certificateChainValidator = new CertificateChainValidator(new PKIXParametersProvider(), new X509CertificateFactory());
 
+    public DropwizardMetadataResolverFactory() {
+        this(new MetadataResolverFactory());
+    }
+
+    /**
+     * @param metadataResolverFactory supplies the refresh scheduler and parser pool shared by the resolvers created
+     */
+    public DropwizardMetadataResolverFactory(MetadataResolverFactory metadataResolverFactory) {
+        this.metadataResolverFactory = metadataResolverFactory;
+    }
+
     public MetadataResolver createMetadataResolver(
             Environment environment,
             MetadataResolverConfiguration metadataConfiguration) {
@@ -65,7 +76,8 @@ public class DropwizardMetadataResolverFactory {
                 metadataConfiguration.getHubTrustStore(),
                 metadataConfiguration.getIdpTrustStore()),
             minRefreshDelay,
-            maxRefreshDelay
+            maxRefreshDelay,
+            metadataConfiguration.isSkipUnchangedMetadata()
         );
     }
 
@@ -3,6 +3,7 @@ package uk.gov.ida.saml.metadata.factories;
 import com.google.common.base.Throwables;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.InitializationService;
 import org.opensaml.saml.metadata.criteria.entity.impl.EntityDescriptorCriterionPredicateRegistry;
@@ -12,23 +13,55 @@ import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
 import uk.gov.ida.saml.metadata.EntitiesDescriptorNameCriterion;
 import uk.gov.ida.saml.metadata.EntitiesDescriptorNamePredicate;
 import uk.gov.ida.saml.metadata.JerseyClientMetadataResolver;
+import uk.gov.ida.saml.metadata.MetadataRefreshScheduler;
 
 import javax.ws.rs.client.Client;
 import java.net.URI;
 import java.util.List;
-import java.util.Timer;
 
+/**
+ * Resolvers created by one factory share its refresh scheduler and its parser pool. By default every factory
+ * shares the same scheduler, which refreshes on a single daemon thread, and the same parser pool.
+ */
 public class MetadataResolverFactory {
+    private static final float DEFAULT_REFRESH_DELAY_JITTER = 0.1f;
+    private static boolean openSamlInitialized;
+
+    private final MetadataRefreshScheduler refreshScheduler;
+    private final ParserPool parserPool;
+    private final float refreshDelayJitter;
+
+    public MetadataResolverFactory() {
+        this(SharedDefaults.REFRESH_SCHEDULER, SharedDefaults.PARSER_POOL, DEFAULT_REFRESH_DELAY_JITTER);
+    }
+
+    /**
+     * @param refreshScheduler schedules the refreshes of every resolver created; it is not shut down when they are destroyed
+     * @param parserPool parses the metadata of every resolver created
+     * @param refreshDelayJitter the fraction of each refresh delay by which a refresh may happen early, see
+     *                           {@link JerseyClientMetadataResolver#setRefreshDelayJitter(float)}
+     */
+    public MetadataResolverFactory(MetadataRefreshScheduler refreshScheduler, ParserPool parserPool, float refreshDelayJitter) {
+        this.refreshScheduler = refreshScheduler;
+        this.parserPool = parserPool;
+        this.refreshDelayJitter = refreshDelayJitter;
+    }
+
+    public MetadataRefreshScheduler getRefreshScheduler() {
+        return refreshScheduler;
+    }
 
     public MetadataResolver create(Client client, URI metadataUri, List<MetadataFilter> metadataFilterList, long minRefreshDelay, long maxRefreshDelay) {
+        return create(client, metadataUri, metadataFilterList, minRefreshDelay, maxRefreshDelay, false);
+    }
+
+    public MetadataResolver create(Client client, URI metadataUri, List<MetadataFilter> metadataFilterList, long minRefreshDelay, long maxRefreshDelay, boolean skipUnchangedMetadata) {
         try {
-            InitializationService.initialize();
+            initializeOpenSaml();
             JerseyClientMetadataResolver metadataResolver = new JerseyClientMetadataResolver(
-                    new Timer(),
+                    refreshScheduler,
                     client,
                     metadataUri);
-            BasicParserPool parserPool = new BasicParserPool();
-            parserPool.initialize();
             metadataResolver.setParserPool(parserPool);
             metadataResolver.setId("MetadataModule.MetadataResolver");
 
@@ -40,7 +73,9 @@ public class MetadataResolverFactory {
             metadataResolver.setFailFastInitialization(false);
             metadataResolver.setMaxRefreshDelay(maxRefreshDelay);
             metadataResolver.setMinRefreshDelay(minRefreshDelay);
+            metadataResolver.setRefreshDelayJitter(refreshDelayJitter);
             metadataResolver.setResolveViaPredicatesOnly(true);
+            metadataResolver.setSkipUnchangedContent(skipUnchangedMetadata);
 
             EntityDescriptorCriterionPredicateRegistry registry = new EntityDescriptorCriterionPredicateRegistry();
             registry.register(EntitiesDescriptorNameCriterion.class, EntitiesDescriptorNamePredicate.class);
@@ -52,4 +87,26 @@ public class MetadataResolverFactory {
             throw Throwables.propagate(e);
         }
     }
+
+    private static synchronized void initializeOpenSaml() throws InitializationException {
+        if (!openSamlInitialized) {
+            InitializationService.initialize();
+            openSamlInitialized = true;
+        }
+    }
+
+    private static final class SharedDefaults {
+        private static final MetadataRefreshScheduler REFRESH_SCHEDULER = MetadataRefreshScheduler.sharedSingleThreaded();
+        private static final ParserPool PARSER_POOL = newParserPool();
+
+        private static ParserPool newParserPool() {
+            try {
+                BasicParserPool parserPool = new BasicParserPool();
+                parserPool.initialize();
+                return parserPool;
+            } catch (ComponentInitializationException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
 }
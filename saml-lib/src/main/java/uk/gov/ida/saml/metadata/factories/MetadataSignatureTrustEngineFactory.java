@@ -6,6 +6,8 @@ import org.opensaml.saml.metadata.resolver.impl.PredicateRoleDescriptorResolver;
 import org.opensaml.saml.security.impl.MetadataCredentialResolver;
 import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.metadata.MetadataEntityIndex;
+import uk.gov.ida.saml.metadata.MetadataEntityIndexCredentialResolver;
 
 public class MetadataSignatureTrustEngineFactory {
     public ExplicitKeySignatureTrustEngine createSignatureTrustEngine(MetadataResolver metadataResolver) throws ComponentInitializationException {
@@ -19,4 +21,14 @@ public class MetadataSignatureTrustEngineFactory {
                 metadataCredentialResolver, DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver()
         );
     }
+
+    /**
+     * A trust engine that looks up signing credentials in an index of the metadata rather than resolving them
+     * from the metadata for every signature.
+     */
+    public ExplicitKeySignatureTrustEngine createSignatureTrustEngine(MetadataEntityIndex metadataEntityIndex) {
+        return new ExplicitKeySignatureTrustEngine(
+                new MetadataEntityIndexCredentialResolver(metadataEntityIndex), DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver()
+        );
+    }
 }
@@ -19,14 +19,27 @@ import static uk.gov.ida.saml.security.errors.SamlTransformationErrorFactory.una
 import static uk.gov.ida.saml.security.errors.SamlTransformationErrorFactory.unableToDecryptXMLEncryptionKey;
 import static uk.gov.ida.saml.security.errors.SamlTransformationErrorFactory.unableToLocateEncryptedKey;
 
+/**
+ * Decrypts assertions, rooting each in a new document so its signature can be verified. The {@link Decrypter} is
+ * configured for this once, when the assertion decrypter is built, and not changed afterwards, so one instance can be
+ * shared by all request threads.
+ */
 public class AssertionDecrypter {
 
     protected final EncryptionAlgorithmValidator encryptionAlgorithmValidator;
-    private Decrypter decrypter;
+    private final Decrypter decrypter;
 
     public AssertionDecrypter(EncryptionAlgorithmValidator encryptionAlgorithmValidator, Decrypter decrypter) {
         this.encryptionAlgorithmValidator = encryptionAlgorithmValidator;
         this.decrypter = decrypter;
+        this.decrypter.setRootInNewDocument(true);
+    }
+
+    /**
+     * Builds the decrypter and its key resolvers once, from the decrypting credentials of the key store.
+     */
+    public AssertionDecrypter(EncryptionAlgorithmValidator encryptionAlgorithmValidator, IdaKeyStoreCredentialRetriever idaKeyStoreCredentialRetriever) {
+        this(encryptionAlgorithmValidator, new DecrypterFactory().createDecrypter(idaKeyStoreCredentialRetriever.getDecryptingCredentials()));
     }
 
     public List<Assertion> decryptAssertions(ValidatedEncryptedAssertionContainer container) {
@@ -35,8 +48,6 @@ public class AssertionDecrypter {
 
         if (encryptedAssertions.isEmpty()) return assertions.build();
 
-        decrypter.setRootInNewDocument(true);
-
         for (EncryptedAssertion encryptedAssertion : encryptedAssertions) {
             try {
                 encryptionAlgorithmValidator.validate(encryptedAssertion);
@@ -58,14 +69,19 @@ public class AssertionDecrypter {
         String algorithm = "";
 
         for (EncryptedAssertion encryptedAssertion : container.getEncryptedAssertions()) {
-            Iterator<EncryptedKey> encryptedKeyIterator;
+            List<EncryptedKey> encryptedKeys;
             if (encryptedAssertion.getEncryptedKeys().size() > 0) {
-                encryptedKeyIterator = encryptedAssertion.getEncryptedKeys().iterator();
+                encryptedKeys = encryptedAssertion.getEncryptedKeys();
             } else if (encryptedAssertion.getEncryptedData().getKeyInfo().getEncryptedKeys().size() > 0) {
-                encryptedKeyIterator = encryptedAssertion.getEncryptedData().getKeyInfo().getEncryptedKeys().iterator();
+                encryptedKeys = encryptedAssertion.getEncryptedData().getKeyInfo().getEncryptedKeys();
             } else {
                 throw new SamlFailedToDecryptException(unableToLocateEncryptedKey());
             }
+            if (decrypter instanceof IdaDecrypter) {
+                // only try the EncryptedKeys meant for us, when their KeyInfo says which they are
+                encryptedKeys = ((IdaDecrypter) decrypter).selectEncryptedKeys(encryptedKeys);
+            }
+            Iterator<EncryptedKey> encryptedKeyIterator = encryptedKeys.iterator();
 
             Key decryptedKey = null;
             while (encryptedKeyIterator.hasNext() && decryptedKey == null) {
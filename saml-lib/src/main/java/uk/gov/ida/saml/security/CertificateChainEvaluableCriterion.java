@@ -40,12 +40,21 @@ public class CertificateChainEvaluableCriterion implements EvaluableCredentialCr
 
     private final CertificateChainValidator certificateChainValidator;
     private final KeyStore keyStore;
+    private final CertificateChainValidationCache certificateChainValidationCache;
     private final Logger log = LoggerFactory.getLogger(CertificateChainEvaluableCriterion.class);
 
 
     public CertificateChainEvaluableCriterion(CertificateChainValidator certificateChainValidator, KeyStore keyStore) {
+        this(certificateChainValidator, keyStore, null);
+    }
+
+    /**
+     * @param certificateChainValidationCache remembers chain validation results, or null to validate every time
+     */
+    public CertificateChainEvaluableCriterion(CertificateChainValidator certificateChainValidator, KeyStore keyStore, CertificateChainValidationCache certificateChainValidationCache) {
         this.certificateChainValidator = certificateChainValidator;
         this.keyStore = keyStore;
+        this.certificateChainValidationCache = certificateChainValidationCache;
     }
 
     @Override
@@ -67,7 +76,9 @@ public class CertificateChainEvaluableCriterion implements EvaluableCredentialCr
         }
 
         try {
-            CertificateValidity result = certificateChainValidator.validate(entityCert, keyStore);
+            CertificateValidity result = certificateChainValidationCache != null
+                    ? certificateChainValidationCache.validate(certificateChainValidator, entityCert, keyStore)
+                    : certificateChainValidator.validate(entityCert, keyStore);
             if (result.isValid()) {
                 return Boolean.TRUE;
             }
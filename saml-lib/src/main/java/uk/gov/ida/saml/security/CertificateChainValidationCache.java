@@ -0,0 +1,201 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.joda.time.DateTimeUtils;
+import org.opensaml.security.x509.X509Support;
+import uk.gov.ida.common.shared.security.verification.CertificateChainValidator;
+import uk.gov.ida.common.shared.security.verification.CertificateValidity;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the result of validating a certificate's chain against a trust store, so the same federation
+ * certificates are not put through PKIX path building on every signature check.
+ *
+ * Results are keyed by the certificate's SHA-256 fingerprint, the trust store and the validator, with the trust
+ * store and validator compared by identity: reloading a trust store produces a new {@link KeyStore}, so results
+ * for the old one are never reused. Only valid results are kept, so a certificate that was not yet valid, or
+ * whose path could not be built at the time, is validated again on its next use. A valid result is kept until
+ * the time to live passes, or the certificate or any trust store certificate it chains to expires, whichever is
+ * sooner. Call {@link #invalidateAll()} if a trust store is modified in place.
+ */
+public class CertificateChainValidationCache {
+
+    private final Cache<Key, Result> results;
+    private final long timeToLiveMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CertificateChainValidationCache(long maximumSize, Duration timeToLive) {
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return TimeUnit.MILLISECONDS.toNanos(DateTimeUtils.currentTimeMillis());
+                    }
+                })
+                .build();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void invalidateAll() {
+        results.invalidateAll();
+    }
+
+    public CertificateValidity validate(CertificateChainValidator certificateChainValidator, X509Certificate certificate, KeyStore trustStore) {
+        Key key;
+        try {
+            key = new Key(Hashing.sha256().hashBytes(certificate.getEncoded()), trustStore, certificateChainValidator);
+        } catch (CertificateEncodingException e) {
+            misses.increment();
+            return certificateChainValidator.validate(certificate, trustStore);
+        }
+
+        long now = DateTimeUtils.currentTimeMillis();
+        CertificateValidity cached = getIfPresent(key, now);
+        return cached != null ? cached : validateAndRemember(key, certificateChainValidator, certificate, trustStore, now);
+    }
+
+    /**
+     * As {@link #validate(CertificateChainValidator, X509Certificate, KeyStore)} for a DER encoded certificate,
+     * which is only parsed if there is no result for it yet.
+     */
+    public CertificateValidity validate(CertificateChainValidator certificateChainValidator, byte[] encodedCertificate, KeyStore trustStore) throws CertificateException {
+        Key key = new Key(Hashing.sha256().hashBytes(encodedCertificate), trustStore, certificateChainValidator);
+
+        long now = DateTimeUtils.currentTimeMillis();
+        CertificateValidity cached = getIfPresent(key, now);
+        return cached != null ? cached : validateAndRemember(key, certificateChainValidator, X509Support.decodeCertificate(encodedCertificate), trustStore, now);
+    }
+
+    private CertificateValidity getIfPresent(Key key, long now) {
+        Result cached = results.getIfPresent(key);
+        if (cached != null && now < cached.expiresAt) {
+            hits.increment();
+            return cached.validity;
+        }
+        misses.increment();
+        return null;
+    }
+
+    private CertificateValidity validateAndRemember(Key key, CertificateChainValidator certificateChainValidator, X509Certificate certificate, KeyStore trustStore, long now) {
+        CertificateValidity validity = certificateChainValidator.validate(certificate, trustStore);
+        if (!validity.isValid()) {
+            return validity;
+        }
+        long expiresAt = Math.min(now + timeToLiveMillis, chainNotAfter(certificate, trustStore, now));
+        if (now < expiresAt) {
+            results.put(key, new Result(validity, expiresAt));
+        } else {
+            results.invalidate(key);
+        }
+        return validity;
+    }
+
+    /**
+     * The earliest notAfter of the certificate and of the trust store certificates found by following its issuers,
+     * or {@link Long#MIN_VALUE} if the trust store cannot be read, so that nothing is kept. Trust store certificates
+     * that had already expired are skipped: PKIX does not check a trust anchor's validity, so their expiry cannot
+     * change the result.
+     */
+    private static long chainNotAfter(X509Certificate certificate, KeyStore trustStore, long now) {
+        long notAfter = certificate.getNotAfter().getTime();
+        if (trustStore == null) {
+            return notAfter;
+        }
+        List<X509Certificate> trustedCertificates = new ArrayList<>();
+        try {
+            for (String alias : Collections.list(trustStore.aliases())) {
+                Certificate trustedCertificate = trustStore.getCertificate(alias);
+                if (trustedCertificate instanceof X509Certificate) {
+                    trustedCertificates.add((X509Certificate) trustedCertificate);
+                }
+            }
+        } catch (KeyStoreException e) {
+            return Long.MIN_VALUE;
+        }
+
+        X509Certificate current = certificate;
+        for (int depth = 0; depth < trustedCertificates.size() && !current.getIssuerX500Principal().equals(current.getSubjectX500Principal()); depth++) {
+            X500Principal issuer = current.getIssuerX500Principal();
+            X509Certificate issuerCertificate = null;
+            for (X509Certificate trustedCertificate : trustedCertificates) {
+                if (issuer.equals(trustedCertificate.getSubjectX500Principal())) {
+                    long trustedNotAfter = trustedCertificate.getNotAfter().getTime();
+                    if (trustedNotAfter > now) {
+                        notAfter = Math.min(notAfter, trustedNotAfter);
+                    }
+                    issuerCertificate = trustedCertificate;
+                }
+            }
+            if (issuerCertificate == null) {
+                break;
+            }
+            current = issuerCertificate;
+        }
+        return notAfter;
+    }
+
+    private static class Result {
+        private final CertificateValidity validity;
+        private final long expiresAt;
+
+        private Result(CertificateValidity validity, long expiresAt) {
+            this.validity = validity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Key {
+        private final HashCode fingerprint;
+        private final KeyStore trustStore;
+        private final CertificateChainValidator certificateChainValidator;
+
+        private Key(HashCode fingerprint, KeyStore trustStore, CertificateChainValidator certificateChainValidator) {
+            this.fingerprint = fingerprint;
+            this.trustStore = trustStore;
+            this.certificateChainValidator = certificateChainValidator;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return fingerprint.equals(key.fingerprint) &&
+                    trustStore == key.trustStore &&
+                    certificateChainValidator == key.certificateChainValidator;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * fingerprint.hashCode() + System.identityHashCode(trustStore)) + System.identityHashCode(certificateChainValidator);
+        }
+    }
+}
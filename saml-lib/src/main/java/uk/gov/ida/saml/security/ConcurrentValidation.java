@@ -0,0 +1,43 @@
+package uk.gov.ida.saml.security;
+
+import org.opensaml.core.xml.XMLObject;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+final class ConcurrentValidation {
+
+    private ConcurrentValidation() {
+    }
+
+    /**
+     * A DOM is not safe to read from several threads at once, so objects may only be verified concurrently
+     * when none of them share a document.
+     */
+    static boolean eachInItsOwnDocument(List<? extends XMLObject> xmlObjects) {
+        Set<Document> documents = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (XMLObject xmlObject : xmlObjects) {
+            Element element = xmlObject.getDOM();
+            if (element != null && !documents.add(element.getOwnerDocument())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package uk.gov.ida.saml.security;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.shibboleth.utilities.java.support.resolver.Criterion;
+import org.joda.time.DateTimeUtils;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialResolver;
 import org.opensaml.security.credential.impl.StaticCredentialResolver;
@@ -11,14 +14,54 @@ import org.opensaml.xmlsec.signature.Signature;
 import uk.gov.ida.saml.security.signature.OutgoingKeySignatureTrustEngine;
 
 import javax.xml.namespace.QName;
+import java.security.PublicKey;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+/**
+ * Keeps a trust engine per entity and only rebuilds it when the entity's verifying keys change. By default the
+ * keys are read from the key store on every validation, so a key removed from the store stops being trusted at once.
+ * With a refresh interval, e.g. one minute, they are re-read at most once per interval and a removed key may still
+ * be trusted until then; call {@link #invalidate(String)} after a known key change to re-read them earlier.
+ */
 public class CredentialFactorySignatureValidator extends SignatureValidator {
+    private static final int MAX_CACHED_ENTITIES = 1000;
+    private static final Duration DEFAULT_TRUST_ENGINE_REFRESH_INTERVAL = Duration.ZERO;
+
     private final SigningCredentialFactory credentialFactory;
+    private final long trustEngineRefreshIntervalMillis;
+    private final KeyInfoCredentialResolver keyInfoCredentialResolver = DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver();
+    private final Cache<String, EntityTrustEngine> trustEngines = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_ENTITIES)
+            .build();
 
     public CredentialFactorySignatureValidator(SigningCredentialFactory credentialFactory) {
+        this(credentialFactory, SignatureAlgorithmPolicy.defaultPolicy(), null);
+    }
+
+    public CredentialFactorySignatureValidator(SigningCredentialFactory credentialFactory, VerifiedSignatureCache verifiedSignatureCache) {
+        this(credentialFactory, SignatureAlgorithmPolicy.defaultPolicy(), verifiedSignatureCache);
+    }
+
+    public CredentialFactorySignatureValidator(SigningCredentialFactory credentialFactory, SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache) {
+        this(credentialFactory, signatureAlgorithmPolicy, verifiedSignatureCache, DEFAULT_TRUST_ENGINE_REFRESH_INTERVAL);
+    }
+
+    public CredentialFactorySignatureValidator(SigningCredentialFactory credentialFactory, SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache, Duration trustEngineRefreshInterval) {
+        super(signatureAlgorithmPolicy, verifiedSignatureCache);
         this.credentialFactory = credentialFactory;
+        this.trustEngineRefreshIntervalMillis = trustEngineRefreshInterval.toMillis();
+    }
+
+    public void invalidate(String entityId) {
+        trustEngines.invalidate(entityId);
+    }
+
+    public void invalidateAll() {
+        trustEngines.invalidateAll();
     }
 
     @Override
@@ -26,12 +69,49 @@ public class CredentialFactorySignatureValidator extends SignatureValidator {
         return Arrays.asList(new Criterion() {});
     }
 
+    @Override
+    protected EntityTrust getEntityTrust(String entityId, QName role) {
+        EntityTrustEngine current = currentTrustEngine(entityId);
+        return new EntityTrust(current.trustEngine, Optional.of(current.verifyingKeys));
+    }
+
     @Override
     protected TrustEngine<Signature> getTrustEngine(String entityId) {
+        return currentTrustEngine(entityId).trustEngine;
+    }
+
+    private EntityTrustEngine currentTrustEngine(String entityId) {
+        long now = DateTimeUtils.currentTimeMillis();
+        EntityTrustEngine cached = trustEngines.getIfPresent(entityId);
+        if (cached != null && now - cached.keysReadAt < trustEngineRefreshIntervalMillis) {
+            return cached;
+        }
+
         List<Credential> credentials = credentialFactory.getVerifyingCredentials(entityId);
+        List<PublicKey> verifyingKeys = credentials.stream()
+                .map(Credential::getPublicKey)
+                .collect(Collectors.toList());
+
+        EntityTrustEngine current;
+        if (cached != null && cached.verifyingKeys.equals(verifyingKeys)) {
+            current = new EntityTrustEngine(cached.verifyingKeys, cached.trustEngine, now);
+        } else {
+            CredentialResolver credResolver = new StaticCredentialResolver(credentials);
+            current = new EntityTrustEngine(verifyingKeys, new OutgoingKeySignatureTrustEngine(credResolver, keyInfoCredentialResolver), now);
+        }
+        trustEngines.put(entityId, current);
+        return current;
+    }
+
+    private static class EntityTrustEngine {
+        private final List<PublicKey> verifyingKeys;
+        private final TrustEngine<Signature> trustEngine;
+        private final long keysReadAt;
 
-        CredentialResolver credResolver = new StaticCredentialResolver(credentials);
-        KeyInfoCredentialResolver kiResolver = DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver();
-        return new OutgoingKeySignatureTrustEngine(credResolver, kiResolver);
+        private EntityTrustEngine(List<PublicKey> verifyingKeys, TrustEngine<Signature> trustEngine, long keysReadAt) {
+            this.verifyingKeys = verifyingKeys;
+            this.trustEngine = trustEngine;
+            this.keysReadAt = keysReadAt;
+        }
     }
 }
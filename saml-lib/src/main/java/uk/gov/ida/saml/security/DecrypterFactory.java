@@ -7,7 +7,6 @@ import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
 import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
 import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
-import org.opensaml.xmlsec.keyinfo.impl.CollectionKeyInfoCredentialResolver;
 
 import java.util.Arrays;
 import java.util.List;
@@ -16,8 +15,8 @@ public class DecrypterFactory {
     public Decrypter createDecrypter(List<Credential> credentials) {
 
         // Resolves local credentials by using information in the EncryptedKey/KeyInfo to query the supplied
-        // local credential resolver.
-        KeyInfoCredentialResolver kekResolver = new CollectionKeyInfoCredentialResolver(credentials);
+        // local credential resolver, trying the key it names, or else the key that last worked, first.
+        KeyInfoCredentialResolver kekResolver = new DecryptionKeyInfoCredentialResolver(credentials);
 
         EncryptedElementTypeEncryptedKeyResolver encryptedElementTypeEncryptedKeyResolver = new EncryptedElementTypeEncryptedKeyResolver();
         List<EncryptedKeyResolver> encKeyResolvers = Arrays.asList(encryptedElementTypeEncryptedKeyResolver, new InlineEncryptedKeyResolver());
@@ -0,0 +1,124 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.keyinfo.impl.CollectionKeyInfoCredentialResolver;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.Key;
+import java.security.KeyException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves our decryption credentials for an EncryptedKey so that, while several encryption keys are in use during
+ * a rotation, the right private key is usually the first and only one tried.
+ *
+ * If the KeyInfo of the EncryptedKey carries a certificate or public key that matches one of our keys, by SHA-256
+ * fingerprint, only the credentials for that key are returned. Otherwise every credential is returned, with the
+ * one that last decrypted a key first, as a sender that gives no hint usually keeps using the same key.
+ */
+public class DecryptionKeyInfoCredentialResolver extends CollectionKeyInfoCredentialResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(DecryptionKeyInfoCredentialResolver.class);
+
+    private final List<Credential> credentials;
+    private final ImmutableListMultimap<HashCode, Credential> credentialsByFingerprint;
+
+    private volatile Credential lastUsed;
+
+    public DecryptionKeyInfoCredentialResolver(List<Credential> credentials) {
+        super(credentials);
+        this.credentials = ImmutableList.copyOf(credentials);
+        ImmutableListMultimap.Builder<HashCode, Credential> credentialsByFingerprint = ImmutableListMultimap.builder();
+        for (Credential credential : credentials) {
+            if (credential.getPublicKey() != null && credential.getPublicKey().getEncoded() != null) {
+                credentialsByFingerprint.put(fingerprint(credential.getPublicKey()), credential);
+            }
+        }
+        this.credentialsByFingerprint = credentialsByFingerprint.build();
+    }
+
+    /**
+     * Remembers the credential holding the given private key as the first to try when there is no hint.
+     */
+    public void keyDecrypted(Key decryptionKey) {
+        Credential current = lastUsed;
+        if (current != null && current.getPrivateKey() == decryptionKey) {
+            return;
+        }
+        for (Credential credential : credentials) {
+            if (credential.getPrivateKey() == decryptionKey || credential.getSecretKey() == decryptionKey) {
+                lastUsed = credential;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return whether the KeyInfo carries a certificate or public key that matches one of our keys
+     */
+    public boolean hasCredentialFor(KeyInfo keyInfo) {
+        return keyInfo != null && !hintedCredentials(keyInfo).isEmpty();
+    }
+
+    @Override
+    protected Iterable<Credential> resolveFromSource(CriteriaSet criteriaSet) throws ResolverException {
+        KeyInfoCriterion keyInfoCriterion = criteriaSet == null ? null : criteriaSet.get(KeyInfoCriterion.class);
+        if (keyInfoCriterion != null && keyInfoCriterion.getKeyInfo() != null) {
+            Set<Credential> hinted = hintedCredentials(keyInfoCriterion.getKeyInfo());
+            if (!hinted.isEmpty()) {
+                return hinted;
+            }
+        }
+
+        Credential first = lastUsed;
+        if (first == null || credentials.get(0) == first) {
+            return credentials;
+        }
+        List<Credential> ordered = new ArrayList<>(credentials.size());
+        ordered.add(first);
+        credentials.stream().filter(credential -> credential != first).forEach(ordered::add);
+        return ordered;
+    }
+
+    private Set<Credential> hintedCredentials(KeyInfo keyInfo) {
+        Set<Credential> hinted = new LinkedHashSet<>();
+        for (PublicKey publicKey : hintedPublicKeys(keyInfo)) {
+            if (publicKey.getEncoded() != null) {
+                hinted.addAll(credentialsByFingerprint.get(fingerprint(publicKey)));
+            }
+        }
+        return hinted;
+    }
+
+    private static List<PublicKey> hintedPublicKeys(KeyInfo keyInfo) {
+        List<PublicKey> publicKeys = new ArrayList<>();
+        try {
+            for (X509Certificate certificate : KeyInfoSupport.getCertificates(keyInfo)) {
+                publicKeys.add(certificate.getPublicKey());
+            }
+            publicKeys.addAll(KeyInfoSupport.getPublicKeys(keyInfo));
+        } catch (CertificateException | KeyException e) {
+            LOG.debug("Ignoring unreadable KeyInfo of an EncryptedKey", e);
+        }
+        return publicKeys;
+    }
+
+    private static HashCode fingerprint(PublicKey publicKey) {
+        return Hashing.sha256().hashBytes(publicKey.getEncoded());
+    }
+}
@@ -1,15 +1,58 @@
 package uk.gov.ida.saml.security;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.saml.saml2.metadata.EncryptionMethod;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
 import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
 import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
 
+import java.security.PublicKey;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Creates encrypters for a recipient's credential using the configured algorithms and key placement.
+ *
+ * Encrypters for credentials with a public key are kept and shared, keyed by the SHA-256 fingerprint of the key and
+ * the algorithms and key placement in use, so a recipient's encrypter is only configured once. An OpenSAML
+ * {@link Encrypter} generates a new data encryption key for each call to encrypt and holds no other per-call state,
+ * so a shared encrypter is safe to use from many threads, but callers must not change its settings.
+ *
+ * For a credential resolved from metadata, the data encryption algorithm is the first of the recipient's
+ * EncryptionMethods that is negotiable, by default AES-GCM or AES128-CBC; a recipient that lists none of them is
+ * sent the configured data encryption algorithm.
+ */
 public class EncrypterFactory {
-    private String keyEncryptionAlgorithm = EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP;
-    private String dataEncryptionAlgorithm = EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128;
-    private Encrypter.KeyPlacement keyPlacement = Encrypter.KeyPlacement.PEER;
+    private static final long DEFAULT_MAXIMUM_CACHED_ENCRYPTERS = 1000;
+
+    private final Cache<Key, Encrypter> encrypters;
+
+    private volatile String keyEncryptionAlgorithm = EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP;
+    private volatile String dataEncryptionAlgorithm = EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128;
+    private volatile Encrypter.KeyPlacement keyPlacement = Encrypter.KeyPlacement.PEER;
+    private volatile Set<String> negotiableDataEncryptionAlgorithms = ImmutableSet.of(
+            EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM,
+            EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM,
+            EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+
+    public EncrypterFactory() {
+        this(DEFAULT_MAXIMUM_CACHED_ENCRYPTERS);
+    }
+
+    /**
+     * @param maximumCachedEncrypters the number of recipient encrypters to keep; zero creates a new encrypter every time
+     */
+    public EncrypterFactory(long maximumCachedEncrypters) {
+        this.encrypters = CacheBuilder.newBuilder().maximumSize(maximumCachedEncrypters).build();
+    }
 
     public EncrypterFactory withKeyEncryptionAlgorithm(String algorithm) {
         keyEncryptionAlgorithm = algorithm;
@@ -26,7 +69,48 @@ public class EncrypterFactory {
         return this;
     }
 
+    /**
+     * @param algorithms the data encryption algorithms a recipient may ask for in its metadata; empty to always
+     *                   use the configured data encryption algorithm
+     */
+    public EncrypterFactory withNegotiableDataEncryptionAlgorithms(Set<String> algorithms) {
+        negotiableDataEncryptionAlgorithms = ImmutableSet.copyOf(algorithms);
+        return this;
+    }
+
     public Encrypter createEncrypter(Credential credential) {
+        String dataEncryptionAlgorithm = negotiateDataEncryptionAlgorithm(credential);
+        String keyEncryptionAlgorithm = this.keyEncryptionAlgorithm;
+        Encrypter.KeyPlacement keyPlacement = this.keyPlacement;
+
+        PublicKey publicKey = credential.getPublicKey();
+        if (publicKey == null || publicKey.getEncoded() == null) {
+            return newEncrypter(credential, dataEncryptionAlgorithm, keyEncryptionAlgorithm, keyPlacement);
+        }
+
+        Key key = new Key(Hashing.sha256().hashBytes(publicKey.getEncoded()), dataEncryptionAlgorithm, keyEncryptionAlgorithm, keyPlacement);
+        try {
+            return encrypters.get(key, () -> newEncrypter(credential, dataEncryptionAlgorithm, keyEncryptionAlgorithm, keyPlacement));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String negotiateDataEncryptionAlgorithm(Credential credential) {
+        Set<String> negotiable = negotiableDataEncryptionAlgorithms;
+        SAMLMDCredentialContext metadataContext = credential.getCredentialContextSet() == null ? null :
+                credential.getCredentialContextSet().get(SAMLMDCredentialContext.class);
+        if (metadataContext != null && !negotiable.isEmpty()) {
+            for (EncryptionMethod encryptionMethod : metadataContext.getEncryptionMethods()) {
+                if (negotiable.contains(encryptionMethod.getAlgorithm())) {
+                    return encryptionMethod.getAlgorithm();
+                }
+            }
+        }
+        return dataEncryptionAlgorithm;
+    }
+
+    private static Encrypter newEncrypter(Credential credential, String dataEncryptionAlgorithm, String keyEncryptionAlgorithm, Encrypter.KeyPlacement keyPlacement) {
         DataEncryptionParameters encParams = new DataEncryptionParameters();
         encParams.setAlgorithm(dataEncryptionAlgorithm);
 
@@ -39,4 +123,37 @@ public class EncrypterFactory {
 
         return encrypter;
     }
+
+    private static class Key {
+        private final HashCode publicKeyFingerprint;
+        private final String dataEncryptionAlgorithm;
+        private final String keyEncryptionAlgorithm;
+        private final Encrypter.KeyPlacement keyPlacement;
+
+        private Key(HashCode publicKeyFingerprint, String dataEncryptionAlgorithm, String keyEncryptionAlgorithm, Encrypter.KeyPlacement keyPlacement) {
+            this.publicKeyFingerprint = publicKeyFingerprint;
+            this.dataEncryptionAlgorithm = dataEncryptionAlgorithm;
+            this.keyEncryptionAlgorithm = keyEncryptionAlgorithm;
+            this.keyPlacement = keyPlacement;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return publicKeyFingerprint.equals(key.publicKeyFingerprint) &&
+                    Objects.equals(dataEncryptionAlgorithm, key.dataEncryptionAlgorithm) &&
+                    Objects.equals(keyEncryptionAlgorithm, key.keyEncryptionAlgorithm) &&
+                    keyPlacement == key.keyPlacement;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = publicKeyFingerprint.hashCode();
+            result = 31 * result + Objects.hashCode(dataEncryptionAlgorithm);
+            result = 31 * result + Objects.hashCode(keyEncryptionAlgorithm);
+            return 31 * result + Objects.hashCode(keyPlacement);
+        }
+    }
 }
@@ -6,12 +6,17 @@ import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml.saml2.core.EncryptedElementType;
 import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.xmlsec.encryption.EncryptedKey;
 import org.opensaml.xmlsec.encryption.support.DecryptionException;
 import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.security.Key;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * Class which implements SAML2-specific options for {@link org.opensaml.saml.saml2.core.EncryptedElementType} objects.
  *
@@ -25,6 +30,8 @@ public class IdaDecrypter extends Decrypter {
     /** Class logger. */
     private static final Logger LOG = LoggerFactory.getLogger(IdaDecrypter.class);
 
+    private final KeyInfoCredentialResolver kekResolver;
+
     /**
      * Constructor.
      *
@@ -35,6 +42,43 @@ public class IdaDecrypter extends Decrypter {
     public IdaDecrypter(KeyInfoCredentialResolver newResolver, KeyInfoCredentialResolver newKEKResolver,
                         EncryptedKeyResolver newEncKeyResolver) {
         super(newResolver, newKEKResolver, newEncKeyResolver);
+        this.kekResolver = newKEKResolver;
+    }
+
+    /**
+     * Decrypt the specified EncryptedKey, telling a {@link DecryptionKeyInfoCredentialResolver} which key worked.
+     *
+     * @param encryptedKey the EncryptedKey to decrypt
+     * @param algorithm the algorithm of the key being decrypted
+     * @param kek the key encryption key
+     * @return the decrypted key
+     * @throws org.opensaml.xmlsec.encryption.support.DecryptionException thrown when decryption generates an error
+     */
+    @Override
+    public Key decryptKey(EncryptedKey encryptedKey, String algorithm, Key kek) throws DecryptionException {
+        Key key = super.decryptKey(encryptedKey, algorithm, kek);
+        if (kekResolver instanceof DecryptionKeyInfoCredentialResolver) {
+            ((DecryptionKeyInfoCredentialResolver) kekResolver).keyDecrypted(kek);
+        }
+        return key;
+    }
+
+    /**
+     * Picks the EncryptedKeys to try, so that of several EncryptedKeys for different recipients only ours are
+     * decrypted.
+     *
+     * @param encryptedKeys the EncryptedKeys of an encrypted element
+     * @return the EncryptedKeys whose KeyInfo names one of our keys, or all of them if none does
+     */
+    public List<EncryptedKey> selectEncryptedKeys(List<EncryptedKey> encryptedKeys) {
+        if (!(kekResolver instanceof DecryptionKeyInfoCredentialResolver)) {
+            return encryptedKeys;
+        }
+        DecryptionKeyInfoCredentialResolver decryptionKeyResolver = (DecryptionKeyInfoCredentialResolver) kekResolver;
+        List<EncryptedKey> hinted = encryptedKeys.stream()
+                .filter(encryptedKey -> decryptionKeyResolver.hasCredentialFor(encryptedKey.getKeyInfo()))
+                .collect(Collectors.toList());
+        return hinted.isEmpty() ? encryptedKeys : hinted;
     }
 
     /**
@@ -2,8 +2,13 @@ package uk.gov.ida.saml.security;
 
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.common.SAML2Support;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialResolver;
 import org.opensaml.security.credential.UsageType;
@@ -11,20 +16,50 @@ import org.opensaml.security.criteria.UsageCriterion;
 
 import javax.xml.namespace.QName;
 import java.text.MessageFormat;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class MetadataBackedEncryptionCredentialResolver implements EncryptionCredentialResolver {
 
     private CredentialResolver credentialResolver;
     private QName role;
+    private final RefreshableMetadataResolver metadataResolver;
+    private final ConcurrentMap<String, CachedCredential> cachedCredentials = new ConcurrentHashMap<>();
 
     public MetadataBackedEncryptionCredentialResolver(CredentialResolver credentialResolver, QName role) {
+        this(credentialResolver, role, null);
+    }
+
+    /**
+     * Remembers the credential resolved for each receiver until the metadata resolver next loads new metadata, or
+     * until the metadata the credential came from passes its validUntil.
+     *
+     * @param metadataResolver the resolver behind the credential resolver, or null to resolve a credential every time
+     */
+    public MetadataBackedEncryptionCredentialResolver(CredentialResolver credentialResolver, QName role, RefreshableMetadataResolver metadataResolver) {
         this.credentialResolver = credentialResolver;
         this.role = role;
+        this.metadataResolver = metadataResolver;
     }
 
     @Override
     public Credential getEncryptingCredential(String receiverId) {
+        if (metadataResolver == null) {
+            return resolveEncryptingCredential(receiverId);
+        }
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+        CachedCredential cached = cachedCredentials.get(receiverId);
+        if (cached != null && cached.isCurrent(lastUpdate)) {
+            return cached.credential;
+        }
+        Credential credential = resolveEncryptingCredential(receiverId);
+        cachedCredentials.put(receiverId, new CachedCredential(lastUpdate, credential));
+        return credential;
+    }
+
+    private Credential resolveEncryptingCredential(String receiverId) {
         CriteriaSet criteria = new CriteriaSet();
         criteria.add(new EntityIdCriterion(receiverId));
         criteria.add(new EntityRoleCriterion(role));
@@ -37,6 +72,23 @@ public class MetadataBackedEncryptionCredentialResolver implements EncryptionCre
         }
     }
 
+    private static class CachedCredential {
+        private final DateTime lastUpdate;
+        private final Credential credential;
+        private final XMLObject source;
+
+        private CachedCredential(DateTime lastUpdate, Credential credential) {
+            this.lastUpdate = lastUpdate;
+            this.credential = credential;
+            SAMLMDCredentialContext context = credential.getCredentialContextSet().get(SAMLMDCredentialContext.class);
+            this.source = context == null ? null : context.getKeyDescriptor();
+        }
+
+        private boolean isCurrent(DateTime currentLastUpdate) {
+            return Objects.equals(lastUpdate, currentLastUpdate) && source != null && SAML2Support.isValid(source);
+        }
+    }
+
     public static class CredentialMissingInMetadataException extends RuntimeException {
 
         public static final String PATTERN = "No public key for entity-id: \"{0}\" could be found in the metadata. Metadata could be expired, invalid, or missing entities";
@@ -1,23 +1,46 @@
 package uk.gov.ida.saml.security;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.Criterion;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.saml2.common.SAML2Support;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
 import org.opensaml.security.criteria.UsageCriterion;
 import org.opensaml.security.trust.TrustEngine;
+import org.opensaml.security.x509.X509Credential;
 import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
 
 import javax.xml.namespace.QName;
+import java.security.PublicKey;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 public class MetadataBackedSignatureValidator extends SignatureValidator {
+    private static final int MAX_CACHED_ENTITIES = 1000;
 
     private final ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine;
     private final Optional<CertificateChainEvaluableCriterion> certificateChainEvaluableCriteria;
+    private final RefreshableMetadataResolver metadataResolver;
+    private final Cache<SimpleImmutableEntry<String, QName>, VerifyingKeys> verifyingKeys = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_ENTITIES)
+            .build();
 
     public static MetadataBackedSignatureValidator withoutCertificateChainValidation(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine) {
         return new MetadataBackedSignatureValidator(explicitKeySignatureTrustEngine);
@@ -27,14 +50,43 @@ public class MetadataBackedSignatureValidator extends SignatureValidator {
         return new MetadataBackedSignatureValidator(explicitKeySignatureTrustEngine, certificateChainEvaluableCriterion);
     }
 
+    /**
+     * @param metadataResolver the resolver behind the trust engine's credential resolver; the entity's verifying keys
+     *                         that key the verified signature cache are resolved once per metadata update
+     */
+    public static MetadataBackedSignatureValidator withoutCertificateChainValidation(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, VerifiedSignatureCache verifiedSignatureCache, RefreshableMetadataResolver metadataResolver) {
+        return withoutCertificateChainValidation(explicitKeySignatureTrustEngine, SignatureAlgorithmPolicy.defaultPolicy(), verifiedSignatureCache, metadataResolver);
+    }
+
+    public static MetadataBackedSignatureValidator withCertificateChainValidation(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, CertificateChainEvaluableCriterion certificateChainEvaluableCriterion, VerifiedSignatureCache verifiedSignatureCache, RefreshableMetadataResolver metadataResolver) {
+        return withCertificateChainValidation(explicitKeySignatureTrustEngine, certificateChainEvaluableCriterion, SignatureAlgorithmPolicy.defaultPolicy(), verifiedSignatureCache, metadataResolver);
+    }
+
+    public static MetadataBackedSignatureValidator withoutCertificateChainValidation(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache, RefreshableMetadataResolver metadataResolver) {
+        return new MetadataBackedSignatureValidator(explicitKeySignatureTrustEngine, Optional.empty(), signatureAlgorithmPolicy, verifiedSignatureCache, metadataResolver);
+    }
+
+    public static MetadataBackedSignatureValidator withCertificateChainValidation(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, CertificateChainEvaluableCriterion certificateChainEvaluableCriterion, SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache, RefreshableMetadataResolver metadataResolver) {
+        return new MetadataBackedSignatureValidator(explicitKeySignatureTrustEngine, Optional.of(certificateChainEvaluableCriterion), signatureAlgorithmPolicy, verifiedSignatureCache, metadataResolver);
+    }
+
     private MetadataBackedSignatureValidator(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine) {
         this.explicitKeySignatureTrustEngine = explicitKeySignatureTrustEngine;
         this.certificateChainEvaluableCriteria = Optional.empty();
+        this.metadataResolver = null;
     }
 
     private MetadataBackedSignatureValidator(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, CertificateChainEvaluableCriterion certificateChainEvaluableCriterion) {
         this.explicitKeySignatureTrustEngine = explicitKeySignatureTrustEngine;
         this.certificateChainEvaluableCriteria = Optional.of(certificateChainEvaluableCriterion);
+        this.metadataResolver = null;
+    }
+
+    private MetadataBackedSignatureValidator(ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine, Optional<CertificateChainEvaluableCriterion> certificateChainEvaluableCriterion, SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache, RefreshableMetadataResolver metadataResolver) {
+        super(signatureAlgorithmPolicy, verifiedSignatureCache);
+        this.explicitKeySignatureTrustEngine = explicitKeySignatureTrustEngine;
+        this.certificateChainEvaluableCriteria = certificateChainEvaluableCriterion;
+        this.metadataResolver = metadataResolver;
     }
 
     @Override
@@ -48,8 +100,102 @@ public class MetadataBackedSignatureValidator extends SignatureValidator {
         return criteriaSet;
     }
 
+    /**
+     * The keys of the entity's signing credentials that pass the same criteria, including any certificate chain
+     * check, as the trust engine applies. They are resolved once per metadata update and re-resolved sooner if
+     * the metadata or a certificate they came from expires.
+     */
+    @Override
+    protected Optional<List<PublicKey>> getVerifyingKeys(String entityId, QName role) throws SecurityException {
+        if (metadataResolver == null) {
+            return Optional.empty();
+        }
+        SimpleImmutableEntry<String, QName> key = new SimpleImmutableEntry<>(entityId, role);
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+        VerifyingKeys cached = verifyingKeys.getIfPresent(key);
+        if (cached != null && cached.isCurrent(lastUpdate)) {
+            return Optional.of(cached.publicKeys);
+        }
+
+        CriteriaSet criteria = new CriteriaSet();
+        criteria.addAll(getAdditionalCriteria(entityId, role));
+        VerifyingKeys current = new VerifyingKeys(lastUpdate, resolveCredentials(entityId, criteria));
+        verifyingKeys.put(key, current);
+        return Optional.of(current.publicKeys);
+    }
+
+    /**
+     * Resolves the entity's signing credentials from metadata, and evaluates their certificate chains if
+     * configured to, once; the returned validator then checks each signature against just those credentials.
+     */
+    @Override
+    protected SignatureValidator forIssuer(String entityId, QName role) throws SecurityException {
+        CriteriaSet criteria = new CriteriaSet();
+        criteria.addAll(getAdditionalCriteria(entityId, role));
+        ExplicitKeySignatureTrustEngine issuerTrustEngine = new ExplicitKeySignatureTrustEngine(
+                new StaticCredentialResolver(resolveCredentials(entityId, criteria)),
+                explicitKeySignatureTrustEngine.getKeyInfoResolver());
+        return new IssuerSignatureValidator(getSignatureAlgorithmPolicy(), issuerTrustEngine);
+    }
+
     @Override
     protected TrustEngine<Signature> getTrustEngine(String entityId) {
         return explicitKeySignatureTrustEngine;
     }
+
+    private List<Credential> resolveCredentials(String entityId, CriteriaSet criteria) throws SecurityException {
+        try {
+            List<Credential> credentials = new ArrayList<>();
+            explicitKeySignatureTrustEngine.getCredentialResolver().resolve(criteria).forEach(credentials::add);
+            return credentials;
+        } catch (ResolverException e) {
+            throw new SecurityException("Unable to resolve signing credentials for " + entityId, e);
+        }
+    }
+
+    private static class VerifyingKeys {
+        private final DateTime lastUpdate;
+        private final List<PublicKey> publicKeys = new ArrayList<>();
+        private final List<XMLObject> sources = new ArrayList<>();
+        private long expiresAt = Long.MAX_VALUE;
+
+        private VerifyingKeys(DateTime lastUpdate, List<Credential> credentials) {
+            this.lastUpdate = lastUpdate;
+            for (Credential credential : credentials) {
+                publicKeys.add(credential.getPublicKey());
+                SAMLMDCredentialContext context = credential.getCredentialContextSet().get(SAMLMDCredentialContext.class);
+                if (context != null && context.getKeyDescriptor() != null) {
+                    sources.add(context.getKeyDescriptor());
+                }
+                if (credential instanceof X509Credential && ((X509Credential) credential).getEntityCertificate() != null) {
+                    expiresAt = Math.min(expiresAt, ((X509Credential) credential).getEntityCertificate().getNotAfter().getTime());
+                }
+            }
+        }
+
+        private boolean isCurrent(DateTime currentLastUpdate) {
+            return Objects.equals(lastUpdate, currentLastUpdate)
+                    && DateTimeUtils.currentTimeMillis() < expiresAt
+                    && sources.stream().allMatch(SAML2Support::isValid);
+        }
+    }
+
+    private static class IssuerSignatureValidator extends SignatureValidator {
+        private final TrustEngine<Signature> trustEngine;
+
+        private IssuerSignatureValidator(SignatureAlgorithmPolicy signatureAlgorithmPolicy, TrustEngine<Signature> trustEngine) {
+            super(signatureAlgorithmPolicy, null);
+            this.trustEngine = trustEngine;
+        }
+
+        @Override
+        protected TrustEngine<Signature> getTrustEngine(String entityId) {
+            return trustEngine;
+        }
+
+        @Override
+        protected List<Criterion> getAdditionalCriteria(String entityId, QName role) {
+            return Collections.emptyList();
+        }
+    }
 }
@@ -7,24 +7,59 @@ import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
 import uk.gov.ida.saml.security.validators.ValidatedAssertions;
 
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class SamlAssertionsSignatureValidator {
 
     private final SamlMessageSignatureValidator samlMessageSignatureValidator;
+    private final Executor executor;
 
     public SamlAssertionsSignatureValidator(SamlMessageSignatureValidator samlMessageSignatureValidator) {
+        this(samlMessageSignatureValidator, null);
+    }
+
+    /**
+     * Verifies the signatures of several assertions concurrently on the given executor, with the first assertion
+     * verified on the calling thread. A DOM is not safe to read from several threads at once, so this only happens
+     * when every assertion is rooted in its own document (as decrypted assertions are); otherwise they are
+     * verified one at a time. Either way the error reported is the one for the first invalid assertion in the list.
+     */
+    public SamlAssertionsSignatureValidator(SamlMessageSignatureValidator samlMessageSignatureValidator, Executor executor) {
         this.samlMessageSignatureValidator = samlMessageSignatureValidator;
+        this.executor = executor;
     }
 
     public ValidatedAssertions validate(List<Assertion> assertions, QName role) {
-        for (Assertion assertion : assertions) {
-            final SamlValidationResponse samlValidationResponse = samlMessageSignatureValidator.validate(assertion, role);
-            checkResponseisOk(samlValidationResponse);
+        if (executor != null && assertions.size() > 1 && ConcurrentValidation.eachInItsOwnDocument(assertions)) {
+            validateConcurrently(assertions, role);
+        } else {
+            for (Assertion assertion : assertions) {
+                final SamlValidationResponse samlValidationResponse = samlMessageSignatureValidator.validate(assertion, role);
+                checkResponseisOk(samlValidationResponse);
+            }
         }
         return new ValidatedAssertions(assertions);
     }
 
+    private void validateConcurrently(List<Assertion> assertions, QName role) {
+        List<CompletableFuture<SamlValidationResponse>> pending = new ArrayList<>();
+        for (Assertion assertion : assertions.subList(1, assertions.size())) {
+            pending.add(CompletableFuture.supplyAsync(() -> samlMessageSignatureValidator.validate(assertion, role), executor));
+        }
+
+        try {
+            checkResponseisOk(samlMessageSignatureValidator.validate(assertions.get(0), role));
+            for (CompletableFuture<SamlValidationResponse> validation : pending) {
+                checkResponseisOk(ConcurrentValidation.join(validation));
+            }
+        } finally {
+            pending.forEach(validation -> validation.cancel(false));
+        }
+    }
+
     private void checkResponseisOk(SamlValidationResponse samlValidationResponse) {
         if(!samlValidationResponse.isOK()) {
             SamlValidationSpecificationFailure failure = samlValidationResponse.getSamlValidationSpecificationFailure();
@@ -6,6 +6,7 @@ import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.Issuer;
 import org.opensaml.saml.saml2.core.RequestAbstractType;
 import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.StatusResponseType;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +16,14 @@ import uk.gov.ida.saml.security.validators.signature.SamlSignatureUtil;
 
 import javax.xml.namespace.QName;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static uk.gov.ida.saml.security.errors.SamlTransformationErrorFactory.invalidMessageSignature;
 import static uk.gov.ida.saml.security.errors.SamlTransformationErrorFactory.unableToValidateMessageSignature;
@@ -56,6 +64,69 @@ public class SamlMessageSignatureValidator {
         return validateSignature(request, issuer.getValue(), role);
     }
 
+    public List<SamlValidationResponse> validateAll(List<? extends SignableSAMLObject> messages, QName role) {
+        return validateAll(messages, role, null);
+    }
+
+    /**
+     * Validates the signatures of a batch of messages, e.g. when auditing an archive of stored responses.
+     * Messages are grouped by issuer so that each issuer's trusted credentials are resolved (and their
+     * certificate chains evaluated) once per batch, and the signatures are then verified on the executor.
+     * Messages sharing a document are verified on the calling thread, as a DOM cannot be read from several
+     * threads at once. A message that cannot be validated at all gets an invalid response in its place
+     * rather than failing the batch.
+     *
+     * @param messages - responses, assertions or requests to validate
+     * @param role - a QName role
+     * @param executor - the executor to verify signatures on, or null to verify them on the calling thread
+     * @return a SamlValidationResponse for each message, in the order given
+     */
+    public List<SamlValidationResponse> validateAll(List<? extends SignableSAMLObject> messages, QName role, Executor executor) {
+        SamlValidationResponse[] responses = new SamlValidationResponse[messages.size()];
+        Map<String, List<Integer>> messagesByIssuer = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Issuer issuer = issuerOf(messages.get(i));
+            Optional<SamlValidationResponse> issuerResponse = validateIssuer(issuer);
+            if (issuerResponse.isPresent()) {
+                responses[i] = issuerResponse.get();
+            } else {
+                messagesByIssuer.computeIfAbsent(issuer.getValue(), issuerId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        boolean concurrent = executor != null && ConcurrentValidation.eachInItsOwnDocument(messages);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> issuerMessages : messagesByIssuer.entrySet()) {
+            String issuerId = issuerMessages.getKey();
+            SignatureValidator issuerSignatureValidator;
+            try {
+                issuerSignatureValidator = signatureValidator.forIssuer(issuerId, role);
+            } catch (org.opensaml.security.SecurityException | RuntimeException e) {
+                LOG.warn("There was an unexpected error resolving the signing credentials for " + issuerId + ".", e);
+                issuerMessages.getValue().forEach(i -> responses[i] = SamlValidationResponse.anInvalidResponse(unableToValidateMessageSignature(), e));
+                continue;
+            }
+            for (int i : issuerMessages.getValue()) {
+                Runnable validation = () -> responses[i] = validateBatchedSignature(issuerSignatureValidator, messages.get(i), issuerId, role);
+                if (concurrent) {
+                    pending.add(CompletableFuture.runAsync(validation, executor));
+                } else {
+                    validation.run();
+                }
+            }
+        }
+        pending.forEach(ConcurrentValidation::join);
+
+        return Arrays.asList(responses);
+    }
+
+    private static Issuer issuerOf(SignableSAMLObject message) {
+        if (message instanceof StatusResponseType) return ((StatusResponseType) message).getIssuer();
+        if (message instanceof Assertion) return ((Assertion) message).getIssuer();
+        if (message instanceof RequestAbstractType) return ((RequestAbstractType) message).getIssuer();
+        return null;
+    }
+
     private Optional<SamlValidationResponse> validateIssuer(Issuer issuer) {
         if (issuer == null) {
             return Optional.of(SamlValidationResponse.anInvalidResponse(SamlTransformationErrorFactory.missingIssuer()));
@@ -67,6 +138,19 @@ public class SamlMessageSignatureValidator {
     }
 
     private SamlValidationResponse validateSignature(SignableSAMLObject signableSAMLObject, String issuerId, QName role) {
+        return validateSignature(signatureValidator, signableSAMLObject, issuerId, role);
+    }
+
+    private static SamlValidationResponse validateBatchedSignature(SignatureValidator signatureValidator, SignableSAMLObject signableSAMLObject, String issuerId, QName role) {
+        try {
+            return validateSignature(signatureValidator, signableSAMLObject, issuerId, role);
+        } catch (RuntimeException e) {
+            LOG.warn("There was an unexpected error validating a message signature from " + issuerId + ".", e);
+            return SamlValidationResponse.anInvalidResponse(unableToValidateMessageSignature(), e);
+        }
+    }
+
+    private static SamlValidationResponse validateSignature(SignatureValidator signatureValidator, SignableSAMLObject signableSAMLObject, String issuerId, QName role) {
         if (signableSAMLObject.getSignature() == null){
             return SamlValidationResponse.anInvalidResponse(SamlTransformationErrorFactory.missingSignature());
         }
@@ -1,6 +1,13 @@
 package uk.gov.ida.saml.security;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.bouncycastle.util.encoders.Base64;
+import org.joda.time.DateTimeUtils;
 import org.opensaml.saml.saml2.encryption.Decrypter;
 import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.credential.Credential;
@@ -9,29 +16,137 @@ import org.opensaml.xmlsec.keyinfo.impl.StaticKeyInfoCredentialResolver;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static javax.crypto.Cipher.SECRET_KEY;
 
+/**
+ * Creates decrypters for data encrypted with a transient key that has been wrapped with our encryption key.
+ *
+ * The same wrapped key is often unwrapped several times while handling one transaction, so unwrapped keys are
+ * kept for a short time, keyed by the SHA-256 digest of the wrapped key. The cached copy of a key is zeroed when
+ * it is evicted or invalidated, or when it is found to have expired. Expired keys are only found during later use of
+ * the factory, so an idle factory keeps them until {@link #cleanUp()} is called; call it periodically to bound how
+ * long unwrapped keys stay in memory. Each thread keeps its own unwrapping cipher.
+ */
 public class SecretKeyDecryptorFactory {
+    private static final long DEFAULT_MAXIMUM_CACHED_KEYS = 1000;
+    private static final Duration DEFAULT_KEY_TIME_TO_LIVE = Duration.ofSeconds(30);
 
     private final IdaKeyStoreCredentialRetriever idaKeyStoreCredentialRetriever;
+    private final Cache<HashCode, CachedKey> transientKeys;
+    private final ThreadLocal<UnwrappingCipher> unwrappingCiphers = new ThreadLocal<>();
 
     public SecretKeyDecryptorFactory(IdaKeyStoreCredentialRetriever idaKeyStoreCredentialRetriever) {
+        this(idaKeyStoreCredentialRetriever, DEFAULT_MAXIMUM_CACHED_KEYS, DEFAULT_KEY_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maximumCachedKeys the number of unwrapped keys to keep; zero unwraps the key every time
+     * @param keyTimeToLive how long to keep an unwrapped key after unwrapping it
+     */
+    public SecretKeyDecryptorFactory(IdaKeyStoreCredentialRetriever idaKeyStoreCredentialRetriever, long maximumCachedKeys, Duration keyTimeToLive) {
         this.idaKeyStoreCredentialRetriever = idaKeyStoreCredentialRetriever;
+        this.transientKeys = CacheBuilder.newBuilder()
+                .maximumSize(maximumCachedKeys)
+                .expireAfterWrite(keyTimeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return TimeUnit.MILLISECONDS.toNanos(DateTimeUtils.currentTimeMillis());
+                    }
+                })
+                .removalListener((RemovalListener<HashCode, CachedKey>) removal -> removal.getValue().destroy())
+                .build();
     }
 
     public Decrypter createDecrypter(String encryptedSecretKey) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
-        List<Credential> decryptingCredentials = idaKeyStoreCredentialRetriever.getDecryptingCredentials();
-        PrivateKey privateKey = decryptingCredentials.get(0).getPrivateKey();
-        Cipher cipher = Cipher.getInstance(privateKey.getAlgorithm());
-        cipher.init(Cipher.UNWRAP_MODE, privateKey);
-        SecretKey transientKey = (SecretKey) cipher.unwrap(Base64.decode(encryptedSecretKey), cipher.getAlgorithm(), SECRET_KEY);
-        BasicCredential basicCredential = new BasicCredential(transientKey);
+        BasicCredential basicCredential = new BasicCredential(getTransientKey(encryptedSecretKey));
         StaticKeyInfoCredentialResolver keyResolver = new StaticKeyInfoCredentialResolver(basicCredential);
         return new Decrypter(keyResolver, null, null);
     }
+
+    /**
+     * Zeroes and discards every cached key, e.g. when the encryption keys are rotated.
+     */
+    public void invalidateAll() {
+        transientKeys.invalidateAll();
+    }
+
+    /**
+     * Zeroes and discards every cached key that has expired.
+     */
+    public void cleanUp() {
+        transientKeys.cleanUp();
+    }
+
+    private SecretKey getTransientKey(String encryptedSecretKey) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        HashCode digest = Hashing.sha256().hashString(encryptedSecretKey, StandardCharsets.UTF_8);
+        CachedKey cached = transientKeys.getIfPresent(digest);
+        SecretKey transientKey = cached == null ? null : cached.toSecretKey();
+        if (transientKey != null) {
+            return transientKey;
+        }
+
+        transientKey = unwrap(encryptedSecretKey);
+        transientKeys.put(digest, new CachedKey(transientKey));
+        return transientKey;
+    }
+
+    private SecretKey unwrap(String encryptedSecretKey) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        List<Credential> decryptingCredentials = idaKeyStoreCredentialRetriever.getDecryptingCredentials();
+        PrivateKey privateKey = decryptingCredentials.get(0).getPrivateKey();
+        Cipher cipher = unwrappingCipher(privateKey);
+        return (SecretKey) cipher.unwrap(Base64.decode(encryptedSecretKey), cipher.getAlgorithm(), SECRET_KEY);
+    }
+
+    private Cipher unwrappingCipher(PrivateKey privateKey) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        UnwrappingCipher unwrappingCipher = unwrappingCiphers.get();
+        if (unwrappingCipher == null || unwrappingCipher.privateKey != privateKey) {
+            Cipher cipher = Cipher.getInstance(privateKey.getAlgorithm());
+            cipher.init(Cipher.UNWRAP_MODE, privateKey);
+            unwrappingCipher = new UnwrappingCipher(privateKey, cipher);
+            unwrappingCiphers.set(unwrappingCipher);
+        }
+        return unwrappingCipher.cipher;
+    }
+
+    private static class UnwrappingCipher {
+        private final PrivateKey privateKey;
+        private final Cipher cipher;
+
+        private UnwrappingCipher(PrivateKey privateKey, Cipher cipher) {
+            this.privateKey = privateKey;
+            this.cipher = cipher;
+        }
+    }
+
+    private static class CachedKey {
+        private final String algorithm;
+        private byte[] encoded;
+
+        private CachedKey(SecretKey secretKey) {
+            this.algorithm = secretKey.getAlgorithm();
+            this.encoded = secretKey.getEncoded();
+        }
+
+        private synchronized SecretKey toSecretKey() {
+            return encoded == null ? null : new SecretKeySpec(encoded, algorithm);
+        }
+
+        private synchronized void destroy() {
+            if (encoded != null) {
+                Arrays.fill(encoded, (byte) 0);
+                encoded = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.xml.security.signature.XMLSignature;
+import org.opensaml.xmlsec.SignatureValidationParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The signature and digest algorithms a {@link SignatureValidator} accepts. The validation parameters are built
+ * once here and shared by every validation, so they must not be modified after construction.
+ */
+public class SignatureAlgorithmPolicy {
+
+    public static final List<String> DEFAULT_WHITELISTED_ALGORITHMS = ImmutableList.of(
+            SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1,
+            SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256,
+            SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA512,
+
+            SignatureConstants.ALGO_ID_DIGEST_SHA1,
+            SignatureConstants.ALGO_ID_DIGEST_SHA256,
+            SignatureConstants.ALGO_ID_DIGEST_SHA512,
+
+            XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256_MGF1,
+            XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256
+    );
+
+    private static final SignatureAlgorithmPolicy DEFAULT_POLICY = new SignatureAlgorithmPolicy(DEFAULT_WHITELISTED_ALGORITHMS);
+
+    private final List<String> whitelistedAlgorithms;
+    private final SignatureValidationParametersCriterion signatureValidationParametersCriterion;
+
+    public SignatureAlgorithmPolicy(Collection<String> whitelistedAlgorithms) {
+        this.whitelistedAlgorithms = ImmutableList.copyOf(whitelistedAlgorithms);
+
+        SignatureValidationParameters signatureValidationParameters = new SignatureValidationParameters();
+        signatureValidationParameters.setWhitelistedAlgorithms(this.whitelistedAlgorithms);
+        this.signatureValidationParametersCriterion = new SignatureValidationParametersCriterion(signatureValidationParameters);
+    }
+
+    public static SignatureAlgorithmPolicy defaultPolicy() {
+        return DEFAULT_POLICY;
+    }
+
+    /**
+     * A policy accepting everything this one does except the given algorithms, e.g. to stop accepting SHA-1.
+     */
+    public SignatureAlgorithmPolicy without(String... algorithms) {
+        List<String> removed = Arrays.asList(algorithms);
+        return new SignatureAlgorithmPolicy(whitelistedAlgorithms.stream()
+                .filter(algorithm -> !removed.contains(algorithm))
+                .collect(ImmutableList.toImmutableList()));
+    }
+
+    public List<String> getWhitelistedAlgorithms() {
+        return whitelistedAlgorithms;
+    }
+
+    SignatureValidationParametersCriterion getSignatureValidationParametersCriterion() {
+        return signatureValidationParametersCriterion;
+    }
+}
@@ -1,24 +1,51 @@
 package uk.gov.ida.saml.security;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.Criterion;
-import org.apache.xml.security.signature.XMLSignature;
 import org.opensaml.saml.common.SignableSAMLObject;
 import org.opensaml.saml.security.impl.SAMLSignatureProfileValidator;
 import org.opensaml.security.SecurityException;
 import org.opensaml.security.trust.TrustEngine;
-import org.opensaml.xmlsec.SignatureValidationParameters;
 import org.opensaml.xmlsec.signature.Signature;
-import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureException;
-import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
 
 import javax.xml.namespace.QName;
-import java.util.Arrays;
+import java.security.PublicKey;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * Criteria for each entity id and role are built once and reused, so {@link #getAdditionalCriteria(String, QName)}
+ * must depend only on its arguments.
+ */
 public abstract class SignatureValidator {
+    private static final int MAX_CRITERIA_TEMPLATES = 1000;
+
     private final SAMLSignatureProfileValidator samlSignatureProfileValidator = new SAMLSignatureProfileValidator();
+    private final SignatureAlgorithmPolicy signatureAlgorithmPolicy;
+    private final VerifiedSignatureCache verifiedSignatureCache;
+    private final Cache<SimpleImmutableEntry<String, QName>, CriteriaSet> criteriaTemplates = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CRITERIA_TEMPLATES)
+            .build();
+
+    protected SignatureValidator() {
+        this(null);
+    }
+
+    /**
+     * @param verifiedSignatureCache remembers signatures already verified by this validator, or null to verify every time
+     */
+    protected SignatureValidator(VerifiedSignatureCache verifiedSignatureCache) {
+        this(SignatureAlgorithmPolicy.defaultPolicy(), verifiedSignatureCache);
+    }
+
+    protected SignatureValidator(SignatureAlgorithmPolicy signatureAlgorithmPolicy, VerifiedSignatureCache verifiedSignatureCache) {
+        this.signatureAlgorithmPolicy = signatureAlgorithmPolicy;
+        this.verifiedSignatureCache = verifiedSignatureCache;
+    }
 
     public final boolean validate(SignableSAMLObject signableSAMLObject, String entityId, QName role) throws SecurityException, SignatureException {
         Signature signature = signableSAMLObject.getSignature();
@@ -29,30 +56,86 @@ public abstract class SignatureValidator {
 
         samlSignatureProfileValidator.validate(signature);
 
-        List<Criterion> additionalCriteria = getAdditionalCriteria(entityId, role);
-        CriteriaSet criteria = new CriteriaSet();
+        EntityTrust entityTrust = getEntityTrust(entityId, role);
+        VerifiedSignatureCache.Lookup cacheLookup = lookUpVerifiedSignature(signature, entityId, role, entityTrust);
+        if (cacheLookup != null && cacheLookup.isVerified()) {
+            return true;
+        }
+
+        CriteriaSet criteria = getCriteria(entityId, role);
+
+        boolean valid = entityTrust.trustEngine.validate(signableSAMLObject.getSignature(), criteria);
+        if (valid && cacheLookup != null) {
+            cacheLookup.markVerified();
+        }
+        return valid;
+    }
+
+    private CriteriaSet getCriteria(String entityId, QName role) {
+        SimpleImmutableEntry<String, QName> templateKey = new SimpleImmutableEntry<>(entityId, role);
+        CriteriaSet criteria = criteriaTemplates.getIfPresent(templateKey);
+        if (criteria == null) {
+            criteria = new CriteriaSet();
+            criteria.add(signatureAlgorithmPolicy.getSignatureValidationParametersCriterion());
+            criteria.addAll(getAdditionalCriteria(entityId, role));
+            criteriaTemplates.put(templateKey, criteria);
+        }
+        return criteria;
+    }
 
-        SignatureValidationParameters signatureValidationParameters = new SignatureValidationParameters();
-        signatureValidationParameters.setWhitelistedAlgorithms(Arrays.asList(
-                SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1,
-                SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256,
-                SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA512,
+    private VerifiedSignatureCache.Lookup lookUpVerifiedSignature(Signature signature, String entityId, QName role, EntityTrust entityTrust) throws SecurityException {
+        if (verifiedSignatureCache == null) {
+            return null;
+        }
+        Optional<List<PublicKey>> verifyingKeys = entityTrust.verifyingKeys != null ? entityTrust.verifyingKeys : getVerifyingKeys(entityId, role);
+        return verifyingKeys.isPresent() ? verifiedSignatureCache.lookup(this, signature, entityId, role, verifyingKeys.get()) : null;
+    }
 
-                SignatureConstants.ALGO_ID_DIGEST_SHA1,
-                SignatureConstants.ALGO_ID_DIGEST_SHA256,
-                SignatureConstants.ALGO_ID_DIGEST_SHA512,
+    /**
+     * What validating one signature from the entity needs, resolved once per validation. By default just the trust
+     * engine, with the verifying keys resolved separately and only when verdicts are cached; validators that hold
+     * both together override this to resolve them in one lookup.
+     */
+    protected EntityTrust getEntityTrust(String entityId, QName role) throws SecurityException {
+        return new EntityTrust(getTrustEngine(entityId), null);
+    }
 
-                XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256_MGF1,
-                XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256
-        ));
-        criteria.add(new SignatureValidationParametersCriterion(signatureValidationParameters));
+    /**
+     * The keys currently trusted to sign for the entity in the given role. Verified signatures are only cached
+     * by validators that can supply these, so that a cached verdict never outlives a key rotation.
+     */
+    protected Optional<List<PublicKey>> getVerifyingKeys(String entityId, QName role) throws SecurityException {
+        return Optional.empty();
+    }
 
-        criteria.addAll(additionalCriteria);
+    /**
+     * A validator for a batch of messages all issued by the given entity in the given role, which may resolve and
+     * evaluate the entity's trusted credentials once for the whole batch rather than once per message.
+     * By default this validator itself.
+     */
+    protected SignatureValidator forIssuer(String entityId, QName role) throws SecurityException {
+        return this;
+    }
 
-        return getTrustEngine(entityId).validate(signableSAMLObject.getSignature(), criteria);
+    protected SignatureAlgorithmPolicy getSignatureAlgorithmPolicy() {
+        return signatureAlgorithmPolicy;
     }
 
     protected abstract TrustEngine<Signature> getTrustEngine(String entityId);
 
     protected abstract List<Criterion> getAdditionalCriteria(String entityId, QName role);
+
+    protected static final class EntityTrust {
+        private final TrustEngine<Signature> trustEngine;
+        private final Optional<List<PublicKey>> verifyingKeys;
+
+        /**
+         * @param verifyingKeys the keys currently trusted to sign for the entity, or null to ask
+         *                      {@link #getVerifyingKeys(String, QName)} when a verdict cache needs them
+         */
+        public EntityTrust(TrustEngine<Signature> trustEngine, Optional<List<PublicKey>> verifyingKeys) {
+            this.trustEngine = trustEngine;
+            this.verifyingKeys = verifyingKeys;
+        }
+    }
 }
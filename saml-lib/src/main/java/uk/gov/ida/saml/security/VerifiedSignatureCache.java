@@ -0,0 +1,161 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.signature.XMLSignature;
+import org.joda.time.DateTimeUtils;
+import org.opensaml.xmlsec.signature.Signature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.QName;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers signatures that a {@link SignatureValidator} has already verified, so an identical signed object
+ * validated again (e.g. the same assertion checked at several points in a flow) skips credential resolution,
+ * trust evaluation and the signature crypto.
+ *
+ * Entries are keyed by the validator that verified the signature, entity id, role, the entity's current verifying
+ * keys, the SignatureValue and the canonicalised SignedInfo, so rotating an entity's keys never reuses an old
+ * verdict, and a cache shared between validators with different algorithm policies or certificate chain checks
+ * never lends one validator's verdict to another. A hit still checks the
+ * reference digests in SignedInfo against the signed content, so a tampered object carrying a copied signature
+ * is not accepted. The SAML signature profile is always checked by the validator before the cache is consulted.
+ */
+public class VerifiedSignatureCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VerifiedSignatureCache.class);
+
+    private final Cache<Key, Boolean> verifiedSignatures;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public VerifiedSignatureCache(long maximumSize, Duration timeToLive) {
+        this.verifiedSignatures = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return TimeUnit.MILLISECONDS.toNanos(DateTimeUtils.currentTimeMillis());
+                    }
+                })
+                .build();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void invalidateAll() {
+        verifiedSignatures.invalidateAll();
+    }
+
+    /**
+     * Returns a lookup for the signature, or null if it has no DOM to key on (e.g. it was never marshalled),
+     * in which case the signature is validated as normal and nothing is cached.
+     */
+    Lookup lookup(SignatureValidator validator, Signature signature, String entityId, QName role, List<PublicKey> verifyingKeys) {
+        Element signatureElement = signature.getDOM();
+        if (signatureElement == null) {
+            return null;
+        }
+        try {
+            XMLSignature xmlSignature = new XMLSignature(signatureElement, "", true);
+            Key key = new Key(
+                    validator,
+                    entityId,
+                    role,
+                    verifyingKeys,
+                    Hashing.sha256().hashBytes(xmlSignature.getSignatureValue()),
+                    Hashing.sha256().hashBytes(xmlSignature.getSignedInfo().getCanonicalizedOctetStream()));
+            return new Lookup(xmlSignature, key);
+        } catch (Exception e) {
+            LOG.debug("Unable to build verified signature cache key, validating without the cache", e);
+            return null;
+        }
+    }
+
+    class Lookup {
+        private final XMLSignature xmlSignature;
+        private final Key key;
+
+        private Lookup(XMLSignature xmlSignature, Key key) {
+            this.xmlSignature = xmlSignature;
+            this.key = key;
+        }
+
+        boolean isVerified() {
+            if (verifiedSignatures.getIfPresent(key) != null && referencesAreValid()) {
+                hits.increment();
+                return true;
+            }
+            misses.increment();
+            return false;
+        }
+
+        void markVerified() {
+            verifiedSignatures.put(key, Boolean.TRUE);
+        }
+
+        private boolean referencesAreValid() {
+            try {
+                return xmlSignature.getSignedInfo().verify();
+            } catch (XMLSecurityException e) {
+                LOG.debug("Reference check failed for a cached signature", e);
+                return false;
+            }
+        }
+    }
+
+    private static class Key {
+        private final SignatureValidator validator;
+        private final String entityId;
+        private final QName role;
+        private final List<PublicKey> verifyingKeys;
+        private final HashCode signatureValueDigest;
+        private final HashCode signedInfoDigest;
+
+        private Key(SignatureValidator validator, String entityId, QName role, List<PublicKey> verifyingKeys, HashCode signatureValueDigest, HashCode signedInfoDigest) {
+            this.validator = validator;
+            this.entityId = entityId;
+            this.role = role;
+            this.verifyingKeys = verifyingKeys;
+            this.signatureValueDigest = signatureValueDigest;
+            this.signedInfoDigest = signedInfoDigest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return validator == key.validator &&
+                    Objects.equals(entityId, key.entityId) &&
+                    Objects.equals(role, key.role) &&
+                    verifyingKeys.equals(key.verifyingKeys) &&
+                    signatureValueDigest.equals(key.signatureValueDigest) &&
+                    signedInfoDigest.equals(key.signedInfoDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(validator), entityId, role, verifyingKeys, signatureValueDigest, signedInfoDigest);
+        }
+    }
+}
@@ -15,7 +15,10 @@ public class EncryptionAlgorithmValidator {
     private final Set<String> keyTransportAlgorithmWhitelist;
 
     public EncryptionAlgorithmValidator() {
-        this.algorithmWhitelist = ImmutableSet.of(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+        this.algorithmWhitelist = ImmutableSet.of(
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM);
         this.keyTransportAlgorithmWhitelist = ImmutableSet.of(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
     }
 
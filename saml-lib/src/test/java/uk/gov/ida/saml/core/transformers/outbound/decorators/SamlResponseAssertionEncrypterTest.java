@@ -1,21 +1,31 @@
 package uk.gov.ida.saml.core.transformers.outbound.decorators;
 
+import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.encryption.Decrypter;
 import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.encryption.support.EncryptionException;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
 import uk.gov.ida.saml.core.test.OpenSAMLRunner;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+import uk.gov.ida.saml.core.test.TestCredentialFactory;
+import uk.gov.ida.saml.security.DecrypterFactory;
 import uk.gov.ida.saml.security.EncrypterFactory;
 import uk.gov.ida.saml.security.EntityToEncryptForLocator;
 import uk.gov.ida.saml.security.KeyStoreBackedEncryptionCredentialResolver;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -25,10 +35,14 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+import static uk.gov.ida.saml.core.test.builders.ResponseBuilder.aResponse;
 
 @RunWith(OpenSAMLRunner.class)
 public class SamlResponseAssertionEncrypterTest {
 
+    private final TestCredentialFactory testCredentialFactory = new TestCredentialFactory(TestCertificateStrings.TEST_PUBLIC_CERT, TestCertificateStrings.TEST_PRIVATE_KEY);
+
     @Test
     public void shouldConvertAssertionIntoEncryptedAssertion() throws EncryptionException {
 
@@ -102,4 +116,58 @@ public class SamlResponseAssertionEncrypterTest {
         }
         fail("Should never get here");
     }
+
+    @Test
+    public void shouldEncryptAssertionsConcurrentlyKeepingTheirOrderAndSignatures() throws Exception {
+        Response response = aResponseWithThreeAssertions();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            concurrentEncrypter(executor).encryptAssertions(response);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEncryptedInOrder(response);
+    }
+
+    @Test
+    public void shouldEncryptAssertionsTheExecutorRejectsOnTheCallingThread() throws Exception {
+        Response response = aResponseWithThreeAssertions();
+
+        concurrentEncrypter(command -> { throw new RejectedExecutionException("Queue full"); }).encryptAssertions(response);
+
+        assertEncryptedInOrder(response);
+    }
+
+    private SamlResponseAssertionEncrypter concurrentEncrypter(Executor executor) {
+        KeyStoreBackedEncryptionCredentialResolver credentialFactory = mock(KeyStoreBackedEncryptionCredentialResolver.class);
+        when(credentialFactory.getEncryptingCredential("some id")).thenReturn(testCredentialFactory.getEncryptingCredential());
+        EntityToEncryptForLocator entityToEncryptForLocator = mock(EntityToEncryptForLocator.class);
+        when(entityToEncryptForLocator.fromRequestId(ArgumentMatchers.anyString())).thenReturn("some id");
+        return new SamlResponseAssertionEncrypter(credentialFactory, new EncrypterFactory(), entityToEncryptForLocator, executor);
+    }
+
+    private static Response aResponseWithThreeAssertions() throws Exception {
+        return aResponse()
+                .withNoDefaultAssertion()
+                .addAssertion(anAssertion().withId("assertion-1").buildUnencrypted())
+                .addAssertion(anAssertion().withId("assertion-2").buildUnencrypted())
+                .addAssertion(anAssertion().withId("assertion-3").buildUnencrypted())
+                .build();
+    }
+
+    private void assertEncryptedInOrder(Response response) throws Exception {
+        assertThat(response.getAssertions()).isEmpty();
+        assertThat(response.getEncryptedAssertions()).hasSize(3);
+        Decrypter decrypter = new DecrypterFactory().createDecrypter(ImmutableList.of(testCredentialFactory.getDecryptingCredential()));
+        decrypter.setRootInNewDocument(true);
+        List<String> ids = new ArrayList<>();
+        for (EncryptedAssertion encryptedAssertion : response.getEncryptedAssertions()) {
+            Assertion assertion = decrypter.decrypt(encryptedAssertion);
+            SignatureValidator.validate(assertion.getSignature(), testCredentialFactory.getSigningCredential());
+            ids.add(assertion.getID());
+        }
+        assertThat(ids).containsExactly("assertion-1", "assertion-2", "assertion-3");
+    }
 }
@@ -6,11 +6,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.security.credential.UsageType;
 import org.xml.sax.SAXParseException;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class SamlObjectParserTest {
 
     @Before
@@ -25,6 +31,56 @@ public class SamlObjectParserTest {
         Assertions.assertThat(samlObject.getIDPSSODescriptor(SAMLConstants.SAML20P_NS).getKeyDescriptors().get(0).getUse()).isEqualTo(UsageType.SIGNING);
     }
 
+    @Test
+    public void shouldParseFromByteBuffer() throws Exception {
+        byte[] bytes = ("padding" + entityDescriptor).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, "padding".length(), bytes.length - "padding".length());
+
+        EntityDescriptor samlObject = new SamlObjectParser().getSamlObject(buffer);
+        Assertions.assertThat(samlObject.getEntityID()).isEqualTo("http://stub_idp.acme.org/foo-bar-baz/SSO/POST");
+    }
+
+    @Test
+    public void shouldParseWithDedicatedParserPool() throws Exception {
+        StripedParserPool parserPool = new StripedParserPool(2, 2);
+        SamlObjectParser samlObjectParser = new SamlObjectParser(parserPool);
+
+        samlObjectParser.getSamlObject(entityDescriptor);
+        EntityDescriptor samlObject = samlObjectParser.getSamlObject(entityDescriptor);
+
+        Assertions.assertThat(samlObject.getEntityID()).isEqualTo("http://stub_idp.acme.org/foo-bar-baz/SSO/POST");
+        Assertions.assertThat(parserPool.getMisses()).isEqualTo(1);
+        Assertions.assertThat(parserPool.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldParseResponseWithTypedFastPath() throws Exception {
+        Response response = new SamlObjectParser().parseResponse(RESPONSE.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThat(response.getID()).isEqualTo("_response-id");
+    }
+
+    @Test
+    public void shouldParseAuthnRequestWithTypedFastPath() throws Exception {
+        AuthnRequest authnRequest = new SamlObjectParser().parseAuthnRequest(AUTHN_REQUEST.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThat(authnRequest.getID()).isEqualTo("_request-id");
+    }
+
+    @Test
+    public void shouldRejectUnexpectedRootElementOnTypedFastPath() {
+        Assertions.assertThatThrownBy(() -> new SamlObjectParser().parseResponse(AUTHN_REQUEST.getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(UnmarshallingException.class)
+                .hasMessageContaining("AuthnRequest");
+    }
+
+    @Test
+    public void shouldFailWhenNoUnmarshallerIsRegisteredForRootElement() {
+        Assertions.assertThatThrownBy(() -> new SamlObjectParser().getSamlObject("<foo xmlns=\"urn:foo\"/>"))
+                .isInstanceOf(UnmarshallingException.class)
+                .hasMessageContaining("{urn:foo}foo");
+    }
+
     @Test
     public void shouldFailWhenNaughtyXml() {
         String xmlString = "<?xml version=\"1.0\"?>\n" +
@@ -48,6 +104,9 @@ public class SamlObjectParserTest {
                 .isInstanceOf(XMLParserException.class);
     }
 
+    private static final String RESPONSE = "<saml2p:Response xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_response-id\" IssueInstant=\"2020-01-01T00:00:00Z\" Version=\"2.0\"/>";
+    private static final String AUTHN_REQUEST = "<saml2p:AuthnRequest xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_request-id\" IssueInstant=\"2020-01-01T00:00:00Z\" Version=\"2.0\"/>";
+
     private static final String entityDescriptor = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:ext=\"urn:uk:gov:cabinet-office:tc:saml:metadata:extensions\" cacheDuration=\"PT1M40.000S\" entityID=\"http://stub_idp.acme.org/foo-bar-baz/SSO/POST\" validUntil=\"2012-11-14T14:40:08.224Z\" xsi:type=\"md:EntityDescriptorType\"><ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><ds:SignedInfo><ds:CanonicalizationMethod Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/><ds:SignatureMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#rsa-sha1\"/><ds:Reference URI=\"\"><ds:Transforms><ds:Transform Algorithm=\"http://www.w3.org/2000/09/xmldsig#enveloped-signature\"/><ds:Transform Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"><ec:InclusiveNamespaces xmlns:ec=\"http://www.w3.org/2001/10/xml-exc-c14n#\" PrefixList=\"xs\"/></ds:Transform></ds:Transforms><ds:DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"/><ds:DigestValue>ziVutS5Scw/+waR24jfJaTkX9aE=</ds:DigestValue></ds:Reference></ds:SignedInfo><ds:SignatureValue>QovUWDK1LAFiZNdgc4j0E07vpYKHJL7/ylL5kdu314wqvZ+yf6UoRXKGUCnzCxU1cN0sz95E7/vG0N+pl/cuAfvSWpTGbgHhWHTlGWoXBFh7Y4bALKANfE/R8lHIfegAPDI8yuOyquIQPqhFgaz1euVREtmCFNxysfy8UsyoW/g=</ds:SignatureValue></ds:Signature><md:IDPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\" xsi:type=\"ext:IDPSSODescriptorType\"><md:KeyDescriptor use=\"signing\" xsi:type=\"md:KeyDescriptorType\"><ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" xsi:type=\"ds:KeyInfoType\"><ds:X509Data xsi:type=\"ds:X509DataType\"><ds:X509Certificate xsi:type=\"xs:base64Binary\">MIICsDCCAhmgAwIBAgIJAMaC0hPH6QKpMA0GCSqGSIb3DQEBBQUAMEUxCzAJBgNV\n" +
             "BAYTAkFVMRMwEQYDVQQIEwpTb21lLVN0YXRlMSEwHwYDVQQKExhJbnRlcm5ldCBX\n" +
             "aWRnaXRzIFB0eSBMdGQwHhcNMTIwOTAzMTYzNTAzWhcNMTIxMDAzMTYzNTAzWjBF\n" +
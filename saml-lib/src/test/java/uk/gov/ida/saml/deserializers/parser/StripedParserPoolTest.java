@@ -0,0 +1,85 @@
+package uk.gov.ida.saml.deserializers.parser;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StripedParserPoolTest {
+
+    private static final String XML = "<foo xmlns=\"urn:foo\"><!-- a comment --><bar>baz</bar></foo>";
+
+    @Test
+    public void shouldParseNamespaceAwareDocumentsWithoutComments() throws Exception {
+        Document document = new StripedParserPool(1, 1).parse(new StringReader(XML));
+
+        assertThat(document.getDocumentElement().getNamespaceURI()).isEqualTo("urn:foo");
+        assertThat(document.getDocumentElement().getChildNodes().getLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReuseReturnedBuilders() throws Exception {
+        StripedParserPool parserPool = new StripedParserPool(4, 2);
+
+        parserPool.parse(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        parserPool.parse(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        parserPool.parse(new StringReader(XML));
+
+        assertThat(parserPool.getMisses()).isEqualTo(1);
+        assertThat(parserPool.getHits()).isEqualTo(2);
+        assertThat(parserPool.getWaits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDiscardBuildersBeyondTheIdleBound() throws Exception {
+        StripedParserPool parserPool = new StripedParserPool(1, 1);
+
+        DocumentBuilder first = parserPool.getBuilder();
+        DocumentBuilder second = parserPool.getBuilder();
+        parserPool.returnBuilder(first);
+        parserPool.returnBuilder(second);
+        parserPool.getBuilder();
+        parserPool.getBuilder();
+
+        assertThat(parserPool.getMisses()).isEqualTo(3);
+        assertThat(parserPool.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldIgnoreBuildersItDidNotCreateOrThatWereAlreadyReturned() throws Exception {
+        StripedParserPool parserPool = new StripedParserPool(1, 5);
+
+        DocumentBuilder builder = parserPool.getBuilder();
+        parserPool.returnBuilder(builder);
+        parserPool.returnBuilder(builder);
+        parserPool.returnBuilder(DocumentBuilderFactory.newInstance().newDocumentBuilder());
+        parserPool.returnBuilder(null);
+        parserPool.getBuilder();
+        parserPool.getBuilder();
+
+        assertThat(parserPool.getHits()).isEqualTo(1);
+        assertThat(parserPool.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectDoctypeDeclarations() {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE foo [<!ENTITY bar \"baz\">]><foo>&bar;</foo>";
+
+        assertThatThrownBy(() -> new StripedParserPool(1, 1).parse(new StringReader(xml)))
+                .isInstanceOf(XMLParserException.class);
+    }
+
+    @Test
+    public void shouldRequireAtLeastOneStripeAndBuilder() {
+        assertThatThrownBy(() -> new StripedParserPool(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new StripedParserPool(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.ida.saml.deserializers.parser;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.saml.saml2.core.Response;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class UnmarshallerCacheTest {
+
+    private static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+    private final UnmarshallerCache unmarshallerCache = new UnmarshallerCache();
+
+    @Before
+    public void setUp() throws Exception {
+        InitializationService.initialize();
+    }
+
+    @Test
+    public void shouldReturnTheUnmarshallerRegisteredForTheElement() throws Exception {
+        Element response = element(Response.DEFAULT_ELEMENT_NAME.getNamespaceURI(), "saml2p:Response");
+
+        assertThat(unmarshallerCache.getUnmarshaller(response))
+                .isSameAs(XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(response));
+        assertThat(unmarshallerCache.getUnmarshaller(Response.DEFAULT_ELEMENT_NAME))
+                .isSameAs(XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(Response.DEFAULT_ELEMENT_NAME));
+    }
+
+    @Test
+    public void shouldDropCachedUnmarshallersWhenTheRegistryIsReplaced() throws Exception {
+        XMLObjectProviderRegistry originalRegistry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        unmarshallerCache.getUnmarshaller(Response.DEFAULT_ELEMENT_NAME);
+
+        try {
+            XMLObjectProviderRegistry replacementRegistry = new XMLObjectProviderRegistry();
+            Unmarshaller replacementUnmarshaller = mock(Unmarshaller.class);
+            replacementRegistry.getUnmarshallerFactory().registerUnmarshaller(Response.DEFAULT_ELEMENT_NAME, replacementUnmarshaller);
+            ConfigurationService.register(XMLObjectProviderRegistry.class, replacementRegistry);
+
+            assertThat(unmarshallerCache.getUnmarshaller(Response.DEFAULT_ELEMENT_NAME)).isSameAs(replacementUnmarshaller);
+        } finally {
+            ConfigurationService.register(XMLObjectProviderRegistry.class, originalRegistry);
+        }
+    }
+
+    @Test
+    public void shouldOnlyRememberABoundedNumberOfLookups() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            Element response = element(Response.DEFAULT_ELEMENT_NAME.getNamespaceURI(), "saml2p:Response");
+            response.setAttributeNS(XSI_NS, "xsi:type", "saml2p:Unknown" + i);
+            unmarshallerCache.getUnmarshaller(response);
+        }
+
+        assertThat(unmarshallerCache.size()).isLessThanOrEqualTo(256);
+    }
+
+    private static Element element(String namespace, String qualifiedName) throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Element element = documentBuilderFactory.newDocumentBuilder().newDocument().createElementNS(namespace, qualifiedName);
+        element.getOwnerDocument().appendChild(element);
+        return element;
+    }
+}
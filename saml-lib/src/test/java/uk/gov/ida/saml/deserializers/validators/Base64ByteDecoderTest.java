@@ -0,0 +1,78 @@
+package uk.gov.ida.saml.deserializers.validators;
+
+import org.apache.xml.security.utils.Base64;
+import org.junit.Test;
+import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.gov.ida.saml.core.validation.errors.SamlTransformationErrorFactory.invalidBase64Encoding;
+import static uk.gov.ida.saml.hub.errors.SamlTransformationErrorFactory.stringTooLarge;
+
+public class Base64ByteDecoderTest {
+
+    private final Base64ByteDecoder decoder = new Base64ByteDecoder(1024);
+
+    @Test
+    public void shouldDecodeIntoByteBuffer() {
+        assertThat(asString(decoder.decode(toBase64Encoded("string")))).isEqualTo("string");
+        assertThat(asString(decoder.decode(toBase64Encoded("strin")))).isEqualTo("strin");
+        assertThat(asString(decoder.decode(toBase64Encoded("stri")))).isEqualTo("stri");
+    }
+
+    @Test
+    public void shouldSkipWhitespace() {
+        assertThat(asString(decoder.decode(" " + toBase64Encoded("string") + "\r\n\t" + toBase64Encoded("string") + "\n")))
+                .isEqualTo("stringstring");
+    }
+
+    @Test
+    public void shouldReuseBufferAcrossCallsOnTheSameThread() {
+        ByteBuffer first = decoder.decode(toBase64Encoded("first"));
+        ByteBuffer second = decoder.decode(toBase64Encoded("second"));
+
+        assertThat(second.array()).isSameAs(first.array());
+        assertThat(asString(second)).isEqualTo("second");
+    }
+
+    @Test
+    public void shouldRejectInvalidBase64() {
+        assertInvalid("<SAMLRequest>&lt;&gt;</SAMLRequest>");
+        assertInvalid("");
+        assertInvalid("abc");
+        assertInvalid("a===");
+        assertInvalid("ab=c");
+        assertInvalid("ab==abcd");
+        assertInvalid("abc=====");
+        assertInvalid("abéd");
+    }
+
+    @Test
+    public void shouldRejectInputThatDecodesToMoreThanTheMaximumLength() {
+        String input = toBase64Encoded(new String(new char[1025]).replace('\0', 'a'));
+
+        SamlValidationSpecificationFailure failure = stringTooLarge(1025, 1024);
+        assertThatThrownBy(() -> decoder.decode(input))
+                .isInstanceOf(SamlTransformationErrorException.class)
+                .hasMessage(failure.getErrorMessage());
+    }
+
+    private void assertInvalid(String input) {
+        SamlValidationSpecificationFailure failure = invalidBase64Encoding(input);
+        assertThatThrownBy(() -> decoder.decode(input))
+                .isInstanceOf(SamlTransformationErrorException.class)
+                .hasMessage(failure.getErrorMessage());
+    }
+
+    private String toBase64Encoded(String string) {
+        return Base64.encode(string.getBytes());
+    }
+
+    private String asString(ByteBuffer buffer) {
+        return new String(buffer.array(), buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+    }
+}
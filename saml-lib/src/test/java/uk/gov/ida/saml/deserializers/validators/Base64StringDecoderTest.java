@@ -8,7 +8,10 @@ import org.mockito.junit.MockitoJUnitRunner;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
 import uk.gov.ida.saml.core.validation.SamlValidationSpecificationFailure;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.fail;
 import static uk.gov.ida.saml.core.validation.errors.SamlTransformationErrorFactory.invalidBase64Encoding;
 
@@ -50,4 +53,32 @@ public class Base64StringDecoderTest {
             assertThat(e.getLogLevel()).isEqualTo(failure.getLogLevel());
         }
     }
+
+    @Test
+    public void shouldDecodePaddedInput() {
+        assertThat(samlStringProcessor.decode(toBase64Encoded("strin"))).isEqualTo("strin");
+        assertThat(samlStringProcessor.decode(toBase64Encoded("stri"))).isEqualTo("stri");
+    }
+
+    @Test
+    public void shouldDecodeMultiByteCharacters() {
+        assertThat(samlStringProcessor.decode(Base64.encode("Ŵrexham".getBytes(StandardCharsets.UTF_8)))).isEqualTo("Ŵrexham");
+    }
+
+    @Test
+    public void shouldRejectMalformedPaddingAndEmptyInput() {
+        assertInvalid("");
+        assertInvalid("   ");
+        assertInvalid("abc");
+        assertInvalid("a===");
+        assertInvalid("ab=c");
+        assertInvalid("ab==abcd");
+    }
+
+    private void assertInvalid(String input) {
+        SamlValidationSpecificationFailure failure = invalidBase64Encoding(input);
+        assertThatThrownBy(() -> samlStringProcessor.decode(input))
+                .isInstanceOf(SamlTransformationErrorException.class)
+                .hasMessage(failure.getErrorMessage());
+    }
 }
@@ -1,9 +1,14 @@
 package uk.gov.ida.saml.metadata;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import certificates.values.CACertificates;
 import keystore.KeyStoreRule;
 import keystore.builders.KeyStoreRuleBuilder;
 import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,6 +17,7 @@ import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.slf4j.LoggerFactory;
 import uk.gov.ida.common.shared.security.X509CertificateFactory;
 import uk.gov.ida.common.shared.security.verification.CertificateChainValidator;
 import uk.gov.ida.common.shared.security.verification.PKIXParametersProvider;
@@ -19,13 +25,18 @@ import uk.gov.ida.saml.core.test.OpenSAMLMockitoRunner;
 import uk.gov.ida.saml.core.test.TestEntityIds;
 import uk.gov.ida.saml.metadata.test.factories.metadata.EntityDescriptorFactory;
 import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+import uk.gov.ida.saml.security.CertificateChainValidationCache;
 
 import javax.xml.namespace.QName;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.security.KeyStore;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -142,6 +153,104 @@ public class CertificateChainValidationFilterTest {
         assertThat(getKeyNamesFromMetadata(metadata, SPSSODescriptor.DEFAULT_ELEMENT_NAME, TestEntityIds.HUB_ENTITY_ID)).doesNotContain(EntityDescriptorFactory.SIGNING_BAD);
     }
 
+    @Test
+    public void shouldReuseChainValidationResultsAcrossMetadataRefreshes() throws Exception {
+        final CertificateChainValidationCache certificateChainValidationCache = new CertificateChainValidationCache(100, Duration.ofHours(1));
+        final CertificateChainValidationFilter idpCertificateChainValidationFilter = new CertificateChainValidationFilter(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, certificateChainValidator, idpKeyStoreRule.getKeyStore(), certificateChainValidationCache);
+
+        final XMLObject firstRefresh = validateMetadata(idpCertificateChainValidationFilter, metadataFactory.defaultMetadata());
+        final long validatedOnFirstRefresh = certificateChainValidationCache.getMisses();
+        final long checkedOnFirstRefresh = validatedOnFirstRefresh + certificateChainValidationCache.getHits();
+        final XMLObject secondRefresh = validateMetadata(idpCertificateChainValidationFilter, metadataFactory.defaultMetadata());
+
+        assertThat(validatedOnFirstRefresh).isGreaterThan(0);
+        assertThat(certificateChainValidationCache.getMisses()).isEqualTo(validatedOnFirstRefresh);
+        assertThat(certificateChainValidationCache.getHits() + certificateChainValidationCache.getMisses()).isEqualTo(2 * checkedOnFirstRefresh);
+        assertThat(getEntityIdsFromMetadata(secondRefresh, IDPSSODescriptor.DEFAULT_ELEMENT_NAME)).containsOnlyElementsOf(getEntityIdsFromMetadata(firstRefresh, IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        assertThat(getEntityIdsFromMetadata(secondRefresh, IDPSSODescriptor.DEFAULT_ELEMENT_NAME)).containsOnlyElementsOf(IDP_ENTITY_IDS);
+    }
+
+    @Test
+    public void shouldValidateUntrustedCertificatesAgainOnEachRefresh() throws Exception {
+        final CertificateChainValidationFilter idpCertificateChainValidationFilter = new CertificateChainValidationFilter(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, certificateChainValidator, hubKeyStoreRule.getKeyStore(), new CertificateChainValidationCache(100, Duration.ofHours(1)));
+
+        validateMetadata(idpCertificateChainValidationFilter, metadataFactory.defaultMetadata());
+        final long validatedOnFirstRefresh = idpCertificateChainValidationFilter.getCertificateChainValidationCache().get().getMisses();
+        final XMLObject metadata = validateMetadata(idpCertificateChainValidationFilter, metadataFactory.defaultMetadata());
+
+        assertThat(validatedOnFirstRefresh).isGreaterThan(0);
+        assertThat(idpCertificateChainValidationFilter.getCertificateChainValidationCache().get().getHits()).isEqualTo(0);
+        assertThat(idpCertificateChainValidationFilter.getCertificateChainValidationCache().get().getMisses()).isEqualTo(2 * validatedOnFirstRefresh);
+        assertThat(getEntityIdsFromMetadata(metadata, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).containsOnlyElementsOf(HUB_ENTITY_IDS);
+        assertThat(getEntityIdsFromMetadata(metadata, IDPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEmpty();
+    }
+
+    @Test
+    public void shouldNotCacheChainValidationResultsUnlessGivenACache() {
+        final CertificateChainValidationFilter spCertificateChainValidationFilter = new CertificateChainValidationFilter(SPSSODescriptor.DEFAULT_ELEMENT_NAME, certificateChainValidator, hubKeyStoreRule.getKeyStore());
+
+        assertThat(spCertificateChainValidationFilter.getCertificateChainValidationCache()).isEmpty();
+    }
+
+    @Test
+    public void shouldFilterOutUntrustedCertificatesWithoutACache() throws Exception {
+        final CertificateChainValidationFilter spCertificateChainValidationFilter = new CertificateChainValidationFilter(SPSSODescriptor.DEFAULT_ELEMENT_NAME, certificateChainValidator, hubKeyStoreRule.getKeyStore(), null);
+        final EntityDescriptorFactory entityDescriptorFactory =  new EntityDescriptorFactory();
+        String metadataWithOneBadKeyName = metadataFactory.metadata(Collections.singletonList(entityDescriptorFactory.badHubEntityDescriptor()));
+
+        final XMLObject metadata = validateMetadata(spCertificateChainValidationFilter, metadataWithOneBadKeyName);
+
+        assertThat(spCertificateChainValidationFilter.getCertificateChainValidationCache()).isEmpty();
+        assertThat(getKeyNamesFromMetadata(metadata, SPSSODescriptor.DEFAULT_ELEMENT_NAME, TestEntityIds.HUB_ENTITY_ID)).containsOnlyElementsOf(HUB_KEY_NAMES);
+        assertThat(getKeyNamesFromMetadata(metadata, SPSSODescriptor.DEFAULT_ELEMENT_NAME, TestEntityIds.HUB_ENTITY_ID)).doesNotContain(EntityDescriptorFactory.SIGNING_BAD);
+    }
+
+    @Test
+    public void shouldFilterIdenticallyWhenCheckingEntitiesConcurrently() throws Exception {
+        final EntityDescriptorFactory entityDescriptorFactory =  new EntityDescriptorFactory();
+        String metadataWithBadCertificates = metadataFactory.metadata(
+            asList(
+                entityDescriptorFactory.badHubEntityDescriptor(),
+                entityDescriptorFactory.idpEntityDescriptor(TestEntityIds.STUB_IDP_ONE),
+                entityDescriptorFactory.idpEntityDescriptor(TestEntityIds.TEST_RP),
+                entityDescriptorFactory.idpEntityDescriptor(TestEntityIds.STUB_IDP_TWO)));
+        ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+        try {
+            for (QName role : asList(SPSSODescriptor.DEFAULT_ELEMENT_NAME, IDPSSODescriptor.DEFAULT_ELEMENT_NAME)) {
+                KeyStore keyStore = role.equals(SPSSODescriptor.DEFAULT_ELEMENT_NAME) ? hubKeyStoreRule.getKeyStore() : idpKeyStoreRule.getKeyStore();
+                final CertificateChainValidationFilter serialFilter = new CertificateChainValidationFilter(role, certificateChainValidator, keyStore, null);
+                final CertificateChainValidationFilter concurrentFilter = new CertificateChainValidationFilter(role, certificateChainValidator, keyStore, null, forkJoinPool);
+
+                List<String> serialLog = new ArrayList<>();
+                final String serialMetadata = SerializeSupport.nodeToString(XMLObjectSupport.marshall(captureLog(serialLog, () -> validateMetadata(serialFilter, metadataWithBadCertificates))));
+                List<String> concurrentLog = new ArrayList<>();
+                final String concurrentMetadata = SerializeSupport.nodeToString(XMLObjectSupport.marshall(captureLog(concurrentLog, () -> validateMetadata(concurrentFilter, metadataWithBadCertificates))));
+
+                assertThat(concurrentMetadata).isEqualTo(serialMetadata);
+                assertThat(concurrentLog).isEqualTo(serialLog);
+                assertThat(serialLog).anyMatch(message -> message.startsWith("Certificate chain validation failed"));
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    private XMLObject captureLog(List<String> messages, Callable<XMLObject> filtering) throws Exception {
+        Logger logger = (Logger) LoggerFactory.getLogger(CertificateChainValidationFilter.class);
+        Level level = logger.getLevel();
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        logger.setLevel(Level.TRACE);
+        try {
+            return filtering.call();
+        } finally {
+            logger.detachAppender(appender);
+            logger.setLevel(level);
+            appender.list.forEach(event -> messages.add(event.getFormattedMessage()));
+        }
+    }
+
     private XMLObject validateMetadata(final CertificateChainValidationFilter certificateChainValidationFilter, String metadataContent) throws Exception {
         BasicParserPool parserPool = new BasicParserPool();
         parserPool.initialize();
@@ -0,0 +1,237 @@
+package uk.gov.ida.saml.metadata;
+
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import uk.gov.ida.saml.core.test.OpenSAMLMockitoRunner;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+
+import javax.ws.rs.client.Client;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(OpenSAMLMockitoRunner.class)
+public class JerseyClientMetadataResolverTest {
+
+    private static final String ETAG = "\"metadata-v1\"";
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Rule
+    public WireMockRule metadataResource = new WireMockRule(WireMockConfiguration.options().dynamicPort());
+
+    private final Client client = new org.glassfish.jersey.client.JerseyClientBuilder().build();
+    private final AtomicInteger filterRuns = new AtomicInteger();
+    private JerseyClientMetadataResolver metadataResolver;
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        if (metadataResolver != null) {
+            metadataResolver.destroy();
+        }
+        client.close();
+    }
+
+    @Test
+    public void shouldKeepCurrentMetadataWhenServerReportsItUnchanged() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).atPriority(2)
+            .willReturn(aResponse().withHeader("ETag", ETAG).withHeader("Last-Modified", LAST_MODIFIED).withBody(new MetadataFactory().defaultMetadata())));
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).atPriority(1)
+            .withHeader("If-None-Match", equalTo(ETAG))
+            .withHeader("If-Modified-Since", equalTo(LAST_MODIFIED))
+            .willReturn(aResponse().withStatus(304)));
+        metadataResolver = initialisedResolver();
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+
+        metadataResolver.refresh();
+
+        metadataResource.verify(2, getRequestedFor(urlEqualTo("/metadata")));
+        metadataResource.verify(1, getRequestedFor(urlEqualTo("/metadata")).withHeader("If-None-Match", equalTo(ETAG)));
+        assertThat(metadataResolver.wasLastRefreshSuccess()).isTrue();
+        assertThat(metadataResolver.getLastUpdate()).isEqualTo(lastUpdate);
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNotNull();
+    }
+
+    @Test
+    public void shouldFetchInFullWhenServerSendsNoValidators() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withBody(new MetadataFactory().defaultMetadata())));
+        metadataResolver = initialisedResolver();
+
+        metadataResolver.refresh();
+
+        metadataResource.verify(2, getRequestedFor(urlEqualTo("/metadata"))
+            .withHeader("If-None-Match", absent())
+            .withHeader("If-Modified-Since", absent()));
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNotNull();
+    }
+
+    @Test
+    public void shouldNotSendValidatorsForMetadataThatFailedToProcess() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withHeader("ETag", ETAG).withBody("not metadata")));
+        metadataResolver = initialisedResolver();
+
+        assertThatThrownBy(() -> metadataResolver.refresh()).isInstanceOf(ResolverException.class);
+
+        metadataResource.verify(0, getRequestedFor(urlEqualTo("/metadata")).withHeader("If-None-Match", equalTo(ETAG)));
+    }
+
+    @Test
+    public void shouldFailRefreshWhenServerReturnsAnError() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withStatus(500)));
+        metadataResolver = initialisedResolver();
+
+        assertThatThrownBy(() -> metadataResolver.refresh()).isInstanceOf(ResolverException.class);
+        assertThat(metadataResolver.wasLastRefreshSuccess()).isFalse();
+    }
+
+    @Test
+    public void shouldNotFilterMetadataWithUnchangedContentAgain() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withBody(new MetadataFactory().defaultMetadata())));
+        metadataResolver = initialisedResolver(true);
+        DateTime lastUpdate = metadataResolver.getLastUpdate();
+
+        metadataResolver.refresh();
+        metadataResolver.refresh();
+
+        metadataResource.verify(3, getRequestedFor(urlEqualTo("/metadata")));
+        assertThat(filterRuns.get()).isEqualTo(1);
+        assertThat(metadataResolver.getProcessedRefreshes()).isEqualTo(1);
+        assertThat(metadataResolver.getSkippedRefreshes()).isEqualTo(2);
+        assertThat(metadataResolver.wasLastRefreshSuccess()).isTrue();
+        assertThat(metadataResolver.getLastUpdate()).isEqualTo(lastUpdate);
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNotNull();
+    }
+
+    @Test
+    public void shouldFilterMetadataWithUnchangedContentWhenSkippingIsNotEnabled() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withBody(new MetadataFactory().defaultMetadata())));
+        metadataResolver = initialisedResolver(false);
+
+        metadataResolver.refresh();
+
+        assertThat(filterRuns.get()).isEqualTo(2);
+        assertThat(metadataResolver.getProcessedRefreshes()).isEqualTo(2);
+        assertThat(metadataResolver.getSkippedRefreshes()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFilterMetadataWithChangedContent() throws Exception {
+        MetadataFactory metadataFactory = new MetadataFactory();
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withBody(metadataFactory.defaultMetadata())));
+        metadataResolver = initialisedResolver(true);
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).willReturn(aResponse().withBody(metadataFactory.emptyMetadata())));
+
+        metadataResolver.refresh();
+
+        assertThat(filterRuns.get()).isEqualTo(2);
+        assertThat(metadataResolver.getSkippedRefreshes()).isEqualTo(0);
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNull();
+    }
+
+    @Test
+    public void shouldFullyProcessUnchangedMetadataOnceTheFullProcessingIntervalHasPassed() throws Exception {
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).atPriority(2)
+            .willReturn(aResponse().withHeader("ETag", ETAG).withBody(new MetadataFactory().defaultMetadata())));
+        metadataResource.stubFor(get(urlEqualTo("/metadata")).atPriority(1)
+            .withHeader("If-None-Match", equalTo(ETAG))
+            .willReturn(aResponse().withStatus(304)));
+        DateTime start = DateTime.now();
+        DateTimeUtils.setCurrentMillisFixed(start.getMillis());
+        metadataResolver = initialisedResolver(true);
+
+        DateTimeUtils.setCurrentMillisFixed(start.plus(metadataResolver.getFullProcessingInterval() - 1).getMillis());
+        metadataResolver.refresh();
+        DateTimeUtils.setCurrentMillisFixed(start.plus(metadataResolver.getFullProcessingInterval()).getMillis());
+        metadataResolver.refresh();
+
+        metadataResource.verify(1, getRequestedFor(urlEqualTo("/metadata")).withHeader("If-None-Match", equalTo(ETAG)));
+        assertThat(filterRuns.get()).isEqualTo(2);
+        assertThat(metadataResolver.getProcessedRefreshes()).isEqualTo(2);
+        assertThat(metadataResolver.getSkippedRefreshes()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRefreshUpToTheJitterEarly() throws Exception {
+        JerseyClientMetadataResolver resolver = new JerseyClientMetadataResolver(new Timer(true), client, URI.create("http://localhost/metadata"));
+        resolver.setMinRefreshDelay(10000);
+        resolver.setMaxRefreshDelay(100000);
+        resolver.setRefreshDelayFactor(0.25f);
+        resolver.setRefreshDelayJitter(0.5f);
+        DateTime now = DateTime.now();
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+        DateTime expectedExpiration = now.plus(400000);
+
+        Set<Long> refreshDelays = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            refreshDelays.add(resolver.computeNextRefreshDelay(expectedExpiration));
+        }
+
+        assertThat(refreshDelays).allSatisfy(refreshDelay -> assertThat(refreshDelay).isBetween(50000L, 100000L));
+        assertThat(refreshDelays.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void shouldNotRefreshSoonerThanTheMinimumRefreshDelayBecauseOfJitter() throws Exception {
+        JerseyClientMetadataResolver resolver = new JerseyClientMetadataResolver(new Timer(true), client, URI.create("http://localhost/metadata"));
+        resolver.setMinRefreshDelay(80000);
+        resolver.setMaxRefreshDelay(100000);
+        resolver.setRefreshDelayFactor(0.25f);
+        resolver.setRefreshDelayJitter(0.5f);
+        DateTime now = DateTime.now();
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+        DateTime expectedExpiration = now.plus(400000);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(resolver.computeNextRefreshDelay(expectedExpiration)).isBetween(80000L, 100000L);
+        }
+    }
+
+    @Test
+    public void shouldRejectJitterOutsideZeroToOne() {
+        JerseyClientMetadataResolver resolver = new JerseyClientMetadataResolver(new Timer(true), client, URI.create("http://localhost/metadata"));
+
+        assertThatThrownBy(() -> resolver.setRefreshDelayJitter(1.5f)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private JerseyClientMetadataResolver initialisedResolver() throws Exception {
+        return initialisedResolver(false);
+    }
+
+    private JerseyClientMetadataResolver initialisedResolver(boolean skipUnchangedContent) throws Exception {
+        JerseyClientMetadataResolver resolver = new JerseyClientMetadataResolver(new Timer(true), client, URI.create("http://localhost:" + metadataResource.port() + "/metadata"));
+        BasicParserPool parserPool = new BasicParserPool();
+        parserPool.initialize();
+        resolver.setParserPool(parserPool);
+        resolver.setId("test-metadata-resolver");
+        resolver.setFailFastInitialization(false);
+        resolver.setSkipUnchangedContent(skipUnchangedContent);
+        resolver.setMetadataFilter(metadata -> {
+            filterRuns.incrementAndGet();
+            return metadata;
+        });
+        resolver.initialize();
+        return resolver;
+    }
+}
@@ -0,0 +1,128 @@
+package uk.gov.ida.saml.metadata;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.UsageCriterion;
+import uk.gov.ida.saml.core.test.OpenSAMLMockitoRunner;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.metadata.factories.CredentialResolverFactory;
+import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+
+import java.security.PublicKey;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(OpenSAMLMockitoRunner.class)
+public class MetadataEntityIndexTest {
+
+    private StringBackedMetadataResolver metadataResolver;
+    private MetadataEntityIndex metadataEntityIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        metadataResolver = new StringBackedMetadataResolver(new MetadataFactory().defaultMetadata());
+        BasicParserPool parserPool = new BasicParserPool();
+        parserPool.initialize();
+        metadataResolver.setParserPool(parserPool);
+        metadataResolver.setRequireValidMetadata(true);
+        metadataResolver.setId("test-metadata-resolver");
+        metadataResolver.initialize();
+        metadataEntityIndex = new MetadataEntityIndex(metadataResolver);
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        metadataResolver.destroy();
+    }
+
+    @Test
+    public void shouldIndexTheSameCredentialsAsTheMetadataCredentialResolver() throws Exception {
+        MetadataCredentialResolver metadataCredentialResolver = new CredentialResolverFactory().create(metadataResolver);
+        MetadataEntityIndexCredentialResolver indexCredentialResolver = new MetadataEntityIndexCredentialResolver(metadataEntityIndex);
+
+        for (UsageType usage : UsageType.values()) {
+            CriteriaSet criteria = new CriteriaSet(
+                    new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID),
+                    new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                    new UsageCriterion(usage));
+
+            assertThat(publicKeys(indexCredentialResolver.resolve(criteria)))
+                    .as(usage.toString())
+                    .isNotEmpty()
+                    .containsExactlyInAnyOrderElementsOf(publicKeys(metadataCredentialResolver.resolve(criteria)));
+        }
+    }
+
+    @Test
+    public void shouldKeepTheKeyDescriptorOfEachCredential() {
+        Credential credential = metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get().getEncryptionCredentials().get(0);
+
+        assertThat(credential.getEntityId()).isEqualTo(TestEntityIds.HUB_ENTITY_ID);
+        assertThat(credential.getCredentialContextSet().get(SAMLMDCredentialContext.class).getKeyDescriptor()).isNotNull();
+    }
+
+    @Test
+    public void shouldIndexEndpointsByRole() {
+        MetadataEntityIndex.Role idp = metadataEntityIndex.getRole(TestEntityIds.STUB_IDP_ONE, IDPSSODescriptor.DEFAULT_ELEMENT_NAME).get();
+
+        assertThat(idp.getEndpoints()).isNotEmpty();
+        assertThat(idp.getSigningCredentials()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldNotFindUnknownEntitiesOrRoles() {
+        assertThat(metadataEntityIndex.getRole("https://unknown.example.com", SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEmpty();
+        assertThat(metadataEntityIndex.getRole(TestEntityIds.STUB_IDP_ONE, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEmpty();
+    }
+
+    @Test
+    public void shouldRebuildOnlyWhenTheResolverLoadsNewMetadata() throws Exception {
+        MetadataEntityIndex.Role hub = metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get();
+        assertThat(metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get()).isSameAs(hub);
+
+        DateTimeUtils.setCurrentMillisFixed(DateTime.now().plusMinutes(1).getMillis());
+        metadataResolver.refresh();
+
+        assertThat(metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get()).isNotSameAs(hub);
+    }
+
+    @Test
+    public void shouldNotReturnRolesOfExpiredMetadata() {
+        assertThat(metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isPresent();
+
+        DateTimeUtils.setCurrentMillisFixed(DateTime.now().plusYears(1).getMillis());
+
+        assertThat(metadataEntityIndex.getRole(TestEntityIds.HUB_ENTITY_ID, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEmpty();
+    }
+
+    @Test
+    public void shouldRequireEntityIdAndRoleCriteria() {
+        MetadataEntityIndexCredentialResolver indexCredentialResolver = new MetadataEntityIndexCredentialResolver(metadataEntityIndex);
+
+        assertThatThrownBy(() -> indexCredentialResolver.resolve(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID))))
+                .hasMessageContaining("criteria are required");
+    }
+
+    private static List<PublicKey> publicKeys(Iterable<Credential> credentials) {
+        return StreamSupport.stream(credentials.spliterator(), false).map(Credential::getPublicKey).collect(Collectors.toList());
+    }
+}
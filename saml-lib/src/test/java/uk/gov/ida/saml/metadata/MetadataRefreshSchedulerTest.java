@@ -0,0 +1,76 @@
+package uk.gov.ida.saml.metadata;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MetadataRefreshSchedulerTest {
+
+    private final MetadataRefreshScheduler scheduler = MetadataRefreshScheduler.singleThreaded();
+
+    @After
+    public void tearDown() {
+        scheduler.cancel();
+    }
+
+    @Test
+    public void shouldKeepRunningTasksAfterOneThrows() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+
+        scheduler.schedule(task(() -> { throw new IllegalStateException("Task already scheduled or cancelled"); }), 0);
+        scheduler.schedule(task(ran::countDown), 10);
+
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldRescheduleTheSameTask() throws Exception {
+        CountDownLatch ran = new CountDownLatch(2);
+        TimerTask task = task(ran::countDown);
+
+        scheduler.schedule(task, 0);
+        scheduler.schedule(task, 10);
+
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldRejectRepeatingTasks() {
+        assertThatThrownBy(() -> scheduler.schedule(task(() -> {}), 0, 1000)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> scheduler.scheduleAtFixedRate(task(() -> {}), new Date(), 1000)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void shouldRejectTasksOnceCancelled() {
+        scheduler.cancel();
+
+        assertThatThrownBy(() -> scheduler.schedule(task(() -> {}), 0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldNotLetTheSharedSchedulerBeCancelled() throws Exception {
+        MetadataRefreshScheduler sharedScheduler = MetadataRefreshScheduler.sharedSingleThreaded();
+        CountDownLatch ran = new CountDownLatch(1);
+
+        sharedScheduler.cancel();
+
+        sharedScheduler.schedule(task(ran::countDown), 0);
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static TimerTask task(Runnable runnable) {
+        return new TimerTask() {
+            @Override
+            public void run() {
+                runnable.run();
+            }
+        };
+    }
+}
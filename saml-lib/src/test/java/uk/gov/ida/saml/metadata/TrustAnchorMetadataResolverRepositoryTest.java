@@ -0,0 +1,230 @@
+package uk.gov.ida.saml.metadata;
+
+import certificates.values.CACertificates;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jose.util.X509CertUtils;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.AbstractMetadataResolver;
+import uk.gov.ida.saml.core.test.OpenSAMLMockitoRunner;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.metadata.factories.MetadataResolverFactory;
+import uk.gov.ida.saml.metadata.test.factories.metadata.MetadataFactory;
+
+import javax.ws.rs.client.Client;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(OpenSAMLMockitoRunner.class)
+public class TrustAnchorMetadataResolverRepositoryTest {
+
+    private static final String COUNTRY_A = "https://country-a.example.com/metadata";
+    private static final String COUNTRY_B = "https://country-b.example.com/metadata";
+    private static final String COUNTRY_WITHOUT_METADATA = "https://country-c.example.com/metadata";
+
+    @Rule
+    public WireMockRule metadataResource = new WireMockRule(WireMockConfiguration.options().dynamicPort());
+
+    private final Client client = new org.glassfish.jersey.client.JerseyClientBuilder().build();
+    private final MetadataResolverFactory metadataResolverFactory = new MetadataResolverFactory();
+    private final List<JWK> trustAnchors = new ArrayList<>();
+    private final AtomicInteger trustAnchorFetches = new AtomicInteger();
+    private TrustAnchorMetadataResolverRepository repository;
+
+    @After
+    public void tearDown() {
+        if (repository != null) {
+            repository.destroy();
+        }
+        client.close();
+    }
+
+    @Test
+    public void shouldProvideAResolverAndTrustEngineForEachTrustAnchor() throws Exception {
+        stubMetadata("a");
+        stubMetadata("b");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        trustAnchors.add(trustAnchor(COUNTRY_B, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+
+        repository = startedRepository();
+
+        assertThat(repository.getResolverEntityIds()).containsExactlyInAnyOrder(COUNTRY_A, COUNTRY_B);
+        assertThat(repository.getTrustAnchorsEntityIds()).containsExactlyInAnyOrder(COUNTRY_A, COUNTRY_B);
+        MetadataResolver countryA = repository.getMetadataResolver(COUNTRY_A).get();
+        MetadataResolver countryB = repository.getMetadataResolver(COUNTRY_B).get();
+        assertThat(countryA).isNotSameAs(countryB);
+        assertThat(repository.getMetadataResolvers()).containsEntry(COUNTRY_A, countryA).containsEntry(COUNTRY_B, countryB);
+        assertThat(countryA.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNotNull();
+        assertThat(repository.getSignatureTrustEngine(COUNTRY_A)).isPresent();
+        assertThat(repository.getMetadataResolver("https://unknown.example.com/metadata")).isEmpty();
+        assertThat(repository.getSignatureTrustEngine("https://unknown.example.com/metadata")).isEmpty();
+    }
+
+    @Test
+    public void shouldNotFetchTrustAnchorsOrMetadataUntilStarted() throws Exception {
+        stubMetadata("a");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+
+        repository = newRepository();
+
+        assertThat(trustAnchorFetches.get()).isEqualTo(0);
+        assertThat(repository.getResolverEntityIds()).isEmpty();
+        metadataResource.verify(0, getRequestedFor(urlEqualTo("/metadata/a")));
+
+        repository.start();
+
+        assertThat(trustAnchorFetches.get()).isEqualTo(1);
+        assertThat(repository.getResolverEntityIds()).containsExactly(COUNTRY_A);
+        assertThatThrownBy(repository::start).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldListEveryTrustAnchorIncludingThoseWhoseResolverCannotBeCreated() throws Exception {
+        stubMetadata("a");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        trustAnchors.add(trustAnchor(COUNTRY_WITHOUT_METADATA, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+
+        repository = startedRepository();
+
+        assertThat(repository.getResolverEntityIds()).containsExactly(COUNTRY_A);
+        assertThat(repository.getTrustAnchorsEntityIds()).containsExactly(COUNTRY_A, COUNTRY_WITHOUT_METADATA);
+        assertThat(repository.getMetadataResolver(COUNTRY_WITHOUT_METADATA)).isEmpty();
+    }
+
+    @Test
+    public void shouldNotTrustMetadataSignedOutsideTheTrustAnchorsChain() throws Exception {
+        stubMetadata("a");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_IDP_CA, CACertificates.TEST_ROOT_CA));
+
+        repository = startedRepository();
+
+        MetadataResolver countryA = repository.getMetadataResolver(COUNTRY_A).get();
+        assertThat(countryA.resolveSingle(new CriteriaSet(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID)))).isNull();
+    }
+
+    @Test
+    public void shouldKeepResolversForUnchangedTrustAnchorsAndDestroyRemovedOnes() throws Exception {
+        stubMetadata("a");
+        stubMetadata("b");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        trustAnchors.add(trustAnchor(COUNTRY_B, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        repository = startedRepository();
+        MetadataResolver countryA = repository.getMetadataResolver(COUNTRY_A).get();
+        MetadataResolver countryB = repository.getMetadataResolver(COUNTRY_B).get();
+
+        trustAnchors.remove(1);
+        repository.refresh();
+
+        assertThat(repository.getMetadataResolver(COUNTRY_A).get()).isSameAs(countryA);
+        assertThat(repository.getMetadataResolver(COUNTRY_B)).isEmpty();
+        assertThat(((AbstractMetadataResolver) countryB).isDestroyed()).isTrue();
+        assertThat(((AbstractMetadataResolver) countryA).isDestroyed()).isFalse();
+    }
+
+    @Test
+    public void shouldReplaceTheResolverForAChangedTrustAnchor() throws Exception {
+        stubMetadata("a");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        repository = startedRepository();
+        MetadataResolver original = repository.getMetadataResolver(COUNTRY_A).get();
+
+        trustAnchors.set(0, trustAnchor(COUNTRY_A, CACertificates.TEST_IDP_CA, CACertificates.TEST_ROOT_CA));
+        repository.refresh();
+
+        assertThat(repository.getMetadataResolver(COUNTRY_A).get()).isNotSameAs(original);
+        assertThat(((AbstractMetadataResolver) original).isDestroyed()).isTrue();
+    }
+
+    @Test
+    public void shouldKeepCurrentResolversWhenTrustAnchorsCannotBeFetched() throws Exception {
+        stubMetadata("a");
+        trustAnchors.add(trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA));
+        repository = startedRepository();
+        MetadataResolver original = repository.getMetadataResolver(COUNTRY_A).get();
+
+        trustAnchors.clear();
+        trustAnchors.add(null);
+        repository.refresh();
+
+        assertThat(repository.getMetadataResolver(COUNTRY_A).get()).isSameAs(original);
+    }
+
+    @Test
+    public void shouldSortTrustAnchorCertificatesByDate() throws Exception {
+        JWK trustAnchor = trustAnchor(COUNTRY_A, CACertificates.TEST_METADATA_CA, CACertificates.TEST_ROOT_CA, CACertificates.TEST_IDP_CA);
+        repository = new TrustAnchorMetadataResolverRepository(ArrayList::new, this::metadataUri, client, metadataResolverFactory, 60000, 600000);
+
+        List<X509Certificate> certificates = repository.sortCertsByDate(trustAnchor);
+
+        assertThat(certificates).hasSize(3).isSortedAccordingTo(Comparator.comparing(X509Certificate::getNotBefore));
+        assertThat(repository.sortCertsByDate(new RSAKey.Builder((RSAPublicKey) certificates.get(0).getPublicKey()).build())).isEmpty();
+    }
+
+    private TrustAnchorMetadataResolverRepository startedRepository() {
+        TrustAnchorMetadataResolverRepository repository = newRepository();
+        repository.start();
+        return repository;
+    }
+
+    private TrustAnchorMetadataResolverRepository newRepository() {
+        return new TrustAnchorMetadataResolverRepository(
+                () -> {
+                    trustAnchorFetches.incrementAndGet();
+                    if (trustAnchors.contains(null)) {
+                        throw new IllegalStateException("Trust anchors unavailable");
+                    }
+                    return new ArrayList<>(trustAnchors);
+                },
+                this::metadataUri,
+                client,
+                metadataResolverFactory,
+                60000,
+                600000);
+    }
+
+    private URI metadataUri(String entityId) {
+        if (entityId.equals(COUNTRY_WITHOUT_METADATA)) {
+            throw new IllegalArgumentException("No metadata location for " + entityId);
+        }
+        return URI.create("http://localhost:" + metadataResource.port() + "/metadata/" + (entityId.equals(COUNTRY_A) ? "a" : "b"));
+    }
+
+    private void stubMetadata(String country) {
+        metadataResource.stubFor(get(urlEqualTo("/metadata/" + country)).willReturn(aResponse().withBody(new MetadataFactory().defaultMetadata())));
+    }
+
+    private static JWK trustAnchor(String entityId, String... certificates) throws Exception {
+        List<Base64> chain = new ArrayList<>();
+        X509Certificate first = null;
+        for (String certificate : certificates) {
+            X509Certificate x509Certificate = X509CertUtils.parse(certificate);
+            first = first == null ? x509Certificate : first;
+            chain.add(Base64.encode(x509Certificate.getEncoded()));
+        }
+        return new RSAKey.Builder((RSAPublicKey) first.getPublicKey())
+                .keyID(entityId)
+                .x509CertChain(chain)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package uk.gov.ida.saml.metadata.factories;
 
 import com.google.common.base.Predicate;
 import net.shibboleth.utilities.java.support.resolver.CriterionPredicateRegistry;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
@@ -11,11 +12,14 @@ import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import uk.gov.ida.saml.metadata.EntitiesDescriptorNameCriterion;
 import uk.gov.ida.saml.metadata.EntitiesDescriptorNamePredicate;
 import uk.gov.ida.saml.metadata.ExpiredCertificateMetadataFilter;
+import uk.gov.ida.saml.metadata.JerseyClientMetadataResolver;
+import uk.gov.ida.saml.metadata.MetadataRefreshScheduler;
 
 import javax.ws.rs.client.Client;
 import java.net.URI;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class MetadataResolverFactoryTest {
@@ -39,4 +43,26 @@ public class MetadataResolverFactoryTest {
         assertThat(predicate.getClass()).isEqualTo(EntitiesDescriptorNamePredicate.class);
         assertThat(batchMetadataResolver.isResolveViaPredicatesOnly()).isTrue();
     }
+
+    @Test
+    public void shouldShareParserPoolBetweenResolvers() throws Exception {
+        Client client = new org.glassfish.jersey.client.JerseyClientBuilder().build();
+        BasicParserPool parserPool = new BasicParserPool();
+        parserPool.initialize();
+        MetadataRefreshScheduler refreshScheduler = MetadataRefreshScheduler.singleThreaded();
+        try {
+            MetadataResolverFactory metadataResolverFactory = new MetadataResolverFactory(refreshScheduler, parserPool, 0.2f);
+
+            JerseyClientMetadataResolver first = (JerseyClientMetadataResolver) metadataResolverFactory.create(client, URI.create("http://example.com/first"), emptyList(), 10, 5);
+            JerseyClientMetadataResolver second = (JerseyClientMetadataResolver) metadataResolverFactory.create(client, URI.create("http://example.com/second"), emptyList(), 10, 5);
+
+            assertThat(first.getParserPool()).isSameAs(parserPool);
+            assertThat(second.getParserPool()).isSameAs(parserPool);
+            assertThat(first.getRefreshDelayJitter()).isEqualTo(0.2f);
+            first.destroy();
+            second.destroy();
+        } finally {
+            refreshScheduler.cancel();
+        }
+    }
 }
@@ -25,6 +25,7 @@ import org.opensaml.xmlsec.signature.support.Signer;
 import org.w3c.dom.Element;
 import uk.gov.ida.saml.core.test.TestCertificateStrings;
 import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.metadata.MetadataEntityIndex;
 import uk.gov.ida.saml.metadata.test.factories.metadata.EntityDescriptorFactory;
 
 import javax.xml.crypto.dsig.CanonicalizationMethod;
@@ -66,6 +67,20 @@ public class MetadataSignatureTrustEngineFactoryTest {
         assertThat(signatureTrustEngine.validate(signature, trustBasisCriteria)).isTrue();
     }
 
+    @Test
+    public void shouldSupportValidatingSignaturesUsingKeysInAMetadataIndex() throws Exception {
+        SignatureTrustEngine signatureTrustEngine = new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(new MetadataEntityIndex(metadataResolver));
+
+        CriteriaSet trustBasisCriteria = new CriteriaSet();
+        trustBasisCriteria.add(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        trustBasisCriteria.add(new EntityIdCriterion(TestEntityIds.HUB_ENTITY_ID));
+        assertThat(signatureTrustEngine.validate(createSignatureInAuthnRequest(TestEntityIds.HUB_ENTITY_ID), trustBasisCriteria)).isTrue();
+
+        trustBasisCriteria.add(new EntityIdCriterion(TestEntityIds.STUB_IDP_ONE), true);
+        assertThat(signatureTrustEngine.validate(createSignatureInAuthnRequest(TestEntityIds.STUB_IDP_ONE), trustBasisCriteria)).isFalse();
+    }
+
     @Test
     public void shouldSupportInvalidatingSignaturesUsingKeysInMetadata() throws Exception {
         SignatureTrustEngine signatureTrustEngine = new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(metadataResolver);
@@ -17,6 +17,9 @@ import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.EncryptedElementTypeEncryptedKeyResolver;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.encryption.CarriedKeyName;
 import org.opensaml.xmlsec.encryption.CipherData;
@@ -24,6 +27,13 @@ import org.opensaml.xmlsec.encryption.EncryptedKey;
 import org.opensaml.xmlsec.encryption.EncryptionMethod;
 import org.opensaml.xmlsec.encryption.EncryptionProperties;
 import org.opensaml.xmlsec.encryption.ReferenceList;
+import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.keyinfo.impl.BasicKeyInfoGeneratorFactory;
 import org.opensaml.xmlsec.signature.KeyInfo;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.w3c.dom.Element;
@@ -39,6 +49,7 @@ import uk.gov.ida.saml.security.exception.SamlFailedToDecryptException;
 import uk.gov.ida.saml.security.saml.OpenSAMLMockitoRunner;
 import uk.gov.ida.saml.security.saml.StringEncoding;
 import uk.gov.ida.saml.security.saml.TestCredentialFactory;
+import uk.gov.ida.saml.security.saml.builders.AssertionBuilder;
 import uk.gov.ida.saml.security.saml.builders.EncryptedAssertionBuilder;
 import uk.gov.ida.saml.security.saml.builders.ResponseBuilder;
 import uk.gov.ida.saml.security.validators.ValidatedResponse;
@@ -49,12 +60,19 @@ import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
 import java.io.IOException;
 import java.net.URL;
+import java.security.Key;
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -103,6 +121,38 @@ public class AssertionDecrypterTest {
         assertEquals(assertions.get(0).getID(), assertionId);
     }
 
+    @Test
+    public void shouldRootDecryptedAssertionsInANewDocument() throws Exception {
+        Decrypter decrypter = new DecrypterFactory().createDecrypter(keyStoreCredentialRetriever.getDecryptingCredentials());
+        assertionDecrypter = new AssertionDecrypter(new EncryptionAlgorithmValidator(), decrypter);
+        final Response response = responseForAssertion(anEncryptedAssertionBuilder().withPublicEncryptionCert(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT).withId(assertionId).build());
+
+        final Assertion assertion = assertionDecrypter.decryptAssertions(new ValidatedResponse(response)).get(0);
+
+        assertThat(assertion.getDOM().getOwnerDocument().getDocumentElement()).isSameAs(assertion.getDOM());
+    }
+
+    @Test
+    public void shouldDecryptConcurrentlyWithOneSharedInstance() throws Exception {
+        assertionDecrypter = new AssertionDecrypter(new EncryptionAlgorithmValidator(), keyStoreCredentialRetriever);
+        List<Callable<String>> decryptions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final String id = assertionId + "-" + i;
+            final Response response = responseForAssertion(anEncryptedAssertionBuilder().withPublicEncryptionCert(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT).withId(id).build());
+            decryptions.add(() -> assertionDecrypter.decryptAssertions(new ValidatedResponse(response)).get(0).getID());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> ids = executor.invokeAll(decryptions);
+            for (int i = 0; i < ids.size(); i++) {
+                assertThat(ids.get(i).get()).isEqualTo(assertionId + "-" + i);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void shouldProvideOneReEncryptedSymmetricKey() throws Exception {
         final Response response = responseForAssertion(anEncryptedAssertionBuilder().withPublicEncryptionCert(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT).withId(assertionId).build());
@@ -164,6 +214,20 @@ public class AssertionDecrypterTest {
         assertThat(base64EncryptedSymmetricKeys.size()).isEqualTo(1);
     }
 
+    @Test
+    public void shouldOnlyDecryptTheEncryptedKeyWhoseKeyInfoNamesOneOfOurKeys() throws Exception {
+        CountingDecrypter decrypter = new CountingDecrypter(keyStoreCredentialRetriever.getDecryptingCredentials());
+        assertionDecrypter = new AssertionDecrypter(new EncryptionAlgorithmValidator(), decrypter);
+        PublicKey otherRecipient = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        PublicKey hub = publicKeyFactory.createPublicKey(TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT);
+        final Response response = responseForAssertion(encryptForRecipients(otherRecipient, hub));
+
+        final List<String> base64EncryptedSymmetricKeys = assertionDecrypter.getReEncryptedKeys(new ValidatedResponse(response), hubSecretKeyEncrypter, TestEntityIds.HUB_ENTITY_ID);
+
+        assertThat(base64EncryptedSymmetricKeys.size()).isEqualTo(1);
+        assertThat(decrypter.attempts).isEqualTo(1);
+    }
+
     @Test (expected = SamlFailedToDecryptException.class)
     public void throwsExceptionIfCannotDecryptAssertions() throws MarshallingException, SignatureException {
         final EncryptedAssertion badlyEncryptedAssertion = anEncryptedAssertionBuilder().withId(assertionId).withEncrypterCredential(
@@ -181,6 +245,24 @@ public class AssertionDecrypterTest {
                 .build();
     }
 
+    private EncryptedAssertion encryptForRecipients(PublicKey... recipients) throws Exception {
+        DataEncryptionParameters encParams = new DataEncryptionParameters();
+        encParams.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+        BasicKeyInfoGeneratorFactory keyInfoGeneratorFactory = new BasicKeyInfoGeneratorFactory();
+        keyInfoGeneratorFactory.setEmitPublicKeyValue(true);
+        List<KeyEncryptionParameters> kekParamsList = new ArrayList<>();
+        for (PublicKey recipient : recipients) {
+            KeyEncryptionParameters kekParams = new KeyEncryptionParameters();
+            kekParams.setEncryptionCredential(new BasicCredential(recipient));
+            kekParams.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+            kekParams.setKeyInfoGenerator(keyInfoGeneratorFactory.newInstance());
+            kekParamsList.add(kekParams);
+        }
+        Encrypter encrypter = new Encrypter(encParams, kekParamsList);
+        encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+        return encrypter.encrypt(AssertionBuilder.anAssertion().withId(assertionId).build());
+    }
+
     private Response responseForMultipleAssertions(EncryptedAssertion ... encryptedAssertions) throws MarshallingException, SignatureException {
         ResponseBuilder aResponseBuilder = aResponse()
                 .withSigningCredential(keyStoreCredentialRetriever.getSigningCredential())
@@ -210,6 +292,20 @@ public class AssertionDecrypterTest {
         return new SecretKeyEncrypter(credentialResolver);
     }
 
+    private static class CountingDecrypter extends IdaDecrypter {
+        private int attempts;
+
+        private CountingDecrypter(List<Credential> credentials) {
+            super(null, new DecryptionKeyInfoCredentialResolver(credentials), new ChainingEncryptedKeyResolver(Arrays.asList(new EncryptedElementTypeEncryptedKeyResolver(), new InlineEncryptedKeyResolver())));
+        }
+
+        @Override
+        public Key decryptKey(EncryptedKey encryptedKey, String algorithm, Key kek) throws DecryptionException {
+            attempts++;
+            return super.decryptKey(encryptedKey, algorithm, kek);
+        }
+    }
+
     private class BadEncryptedKey implements EncryptedKey {
         /*
         * As convoluted as this seems, I think it's the most straightforward way to get a key that can't be decrypted
@@ -0,0 +1,135 @@
+package uk.gov.ida.saml.security;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.security.x509.BasicX509Credential;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.common.shared.security.verification.CertificateChainValidator;
+import uk.gov.ida.common.shared.security.verification.CertificateValidity;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyStore;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CertificateChainValidationCacheTest {
+
+    private final X509Certificate certificate = new X509CertificateFactory().createCertificate(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT);
+    private final CertificateChainValidator certificateChainValidator = mock(CertificateChainValidator.class);
+    private final CertificateChainValidationCache certificateChainValidationCache = new CertificateChainValidationCache(100, Duration.ofMinutes(10));
+    private KeyStore trustStore;
+
+    @Before
+    public void setUp() throws Exception {
+        trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        when(certificateChainValidator.validate(any(X509Certificate.class), any(KeyStore.class))).thenReturn(CertificateValidity.valid());
+        DateTimeFreezer.freezeTime(new DateTime(certificate.getNotAfter()).minusHours(1));
+    }
+
+    @After
+    public void unfreezeTime() {
+        DateTimeFreezer.unfreezeTime();
+    }
+
+    @Test
+    public void shouldValidateEachCertificateAgainstATrustStoreOnce() {
+        assertThat(certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore).isValid()).isTrue();
+        assertThat(certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore).isValid()).isTrue();
+
+        verify(certificateChainValidator, times(1)).validate(certificate, trustStore);
+        assertThat(certificateChainValidationCache.getHits()).isEqualTo(1);
+        assertThat(certificateChainValidationCache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRememberInvalidResults() {
+        when(certificateChainValidator.validate(certificate, trustStore))
+                .thenReturn(CertificateValidity.invalid(new CertPathValidatorException()))
+                .thenReturn(CertificateValidity.valid());
+
+        assertThat(certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore).isValid()).isFalse();
+        assertThat(certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore).isValid()).isTrue();
+
+        verify(certificateChainValidator, times(2)).validate(certificate, trustStore);
+    }
+
+    @Test
+    public void shouldValidateAgainAgainstAReloadedTrustStore() throws Exception {
+        KeyStore reloadedTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, reloadedTrustStore);
+
+        verify(certificateChainValidator, times(1)).validate(certificate, trustStore);
+        verify(certificateChainValidator, times(1)).validate(certificate, reloadedTrustStore);
+    }
+
+    @Test
+    public void shouldValidateAgainOnceTheCertificateHasExpired() {
+        DateTimeFreezer.freezeTime(new DateTime(certificate.getNotAfter()).minusMinutes(1));
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        DateTimeFreezer.freezeTime(new DateTime(certificate.getNotAfter()).plusMinutes(1));
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        verify(certificateChainValidator, times(2)).validate(certificate, trustStore);
+    }
+
+    @Test
+    public void shouldValidateAgainOnceACertificateInTheChainHasExpired() throws Exception {
+        DateTime intermediateNotAfter = new DateTime(certificate.getNotAfter()).minusMinutes(55);
+        X509Certificate intermediate = mock(X509Certificate.class);
+        when(intermediate.getSubjectX500Principal()).thenReturn(certificate.getIssuerX500Principal());
+        when(intermediate.getIssuerX500Principal()).thenReturn(new X500Principal("CN=Test Root CA"));
+        when(intermediate.getNotAfter()).thenReturn(intermediateNotAfter.toDate());
+        trustStore.setCertificateEntry("intermediate", intermediate);
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        DateTimeFreezer.freezeTime(intermediateNotAfter.plusMinutes(1));
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        verify(certificateChainValidator, times(2)).validate(certificate, trustStore);
+    }
+
+    @Test
+    public void shouldValidateAgainOnceTheTimeToLiveHasPassed() {
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        DateTimeFreezer.freezeTime(new DateTime(certificate.getNotAfter()).minusHours(1).plusMinutes(11));
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        verify(certificateChainValidator, times(2)).validate(certificate, trustStore);
+    }
+
+    @Test
+    public void shouldValidateAgainAfterInvalidation() {
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+        certificateChainValidationCache.invalidateAll();
+        certificateChainValidationCache.validate(certificateChainValidator, certificate, trustStore);
+
+        verify(certificateChainValidator, times(2)).validate(certificate, trustStore);
+    }
+
+    @Test
+    public void shouldLetTheCriterionReuseChainValidationResults() {
+        CertificateChainEvaluableCriterion criterion = new CertificateChainEvaluableCriterion(certificateChainValidator, trustStore, certificateChainValidationCache);
+        BasicX509Credential credential = new BasicX509Credential(certificate);
+
+        assertThat(criterion.apply(credential)).isTrue();
+        assertThat(criterion.apply(credential)).isTrue();
+
+        verify(certificateChainValidator, times(1)).validate(certificate, trustStore);
+    }
+}
@@ -3,11 +3,16 @@ package uk.gov.ida.saml.security;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
+import org.joda.time.DateTime;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.security.credential.Credential;
+import org.opensaml.security.trust.TrustEngine;
+import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import uk.gov.ida.saml.core.test.TestCertificateStrings;
 import uk.gov.ida.saml.core.test.TestEntityIds;
@@ -21,7 +26,11 @@ import uk.gov.ida.saml.security.saml.deserializers.SamlObjectParser;
 import uk.gov.ida.saml.security.saml.deserializers.StringToOpenSamlObjectTransformer;
 
 import java.net.URL;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -39,6 +48,17 @@ public class CredentialFactorySignatureValidatorTest {
         assertThat(credentialFactorySignatureValidator.validate(assertion, issuerId, null)).isEqualTo(true);
     }
 
+    @Test
+    public void shouldNotAcceptSignaturesUsingAlgorithmsOutsideTheConfiguredPolicy() throws Exception {
+        SignatureAlgorithmPolicy policyWithoutRsaSha256 = SignatureAlgorithmPolicy.defaultPolicy().without(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        CredentialFactorySignatureValidator validator = new CredentialFactorySignatureValidator(credentialFactory, policyWithoutRsaSha256, null);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).withSignatureAlgorithm(new SignatureRSASHA256()).build()).build();
+
+        assertThat(validator.validate(assertion, issuerId, null)).isEqualTo(false);
+        assertThat(credentialFactorySignatureValidator.validate(assertion, issuerId, null)).isEqualTo(true);
+    }
+
     @Test
     public void shouldNotAcceptUnsignedAssertions() throws Exception {
         assertThat(credentialFactorySignatureValidator.validate(AssertionBuilder.anAssertion().withoutSigning().build(), issuerId, null)).isEqualTo(false);
@@ -71,6 +91,74 @@ public class CredentialFactorySignatureValidatorTest {
         assertThat(validate).isEqualTo(false);
     }
 
+    @Test
+    public void shouldReuseTheTrustEngineWhileTheEntitysKeysAreUnchanged() {
+        CredentialFactorySignatureValidator validator = new CredentialFactorySignatureValidator(new SigningCredentialFactory(new HardCodedKeyStore(issuerId)));
+
+        assertThat(validator.getTrustEngine(issuerId)).isSameAs(validator.getTrustEngine(issuerId));
+    }
+
+    @Test
+    public void shouldRebuildTheTrustEngineAsSoonAsKeysChangeByDefault() {
+        List<PublicKey> verifyingKeys = new ArrayList<>(new HardCodedKeyStore(issuerId).getVerifyingKeysForEntity(issuerId));
+        CredentialFactorySignatureValidator validator = new CredentialFactorySignatureValidator(
+                new SigningCredentialFactory(entityId -> new ArrayList<>(verifyingKeys)));
+        TrustEngine<Signature> originalTrustEngine = validator.getTrustEngine(issuerId);
+
+        verifyingKeys.clear();
+
+        assertThat(validator.getTrustEngine(issuerId)).isNotSameAs(originalTrustEngine);
+    }
+
+    @Test
+    public void shouldOnlyReReadKeysOncePerRefreshIntervalUnlessInvalidated() {
+        AtomicInteger keyStoreReads = new AtomicInteger();
+        HardCodedKeyStore keyStore = new HardCodedKeyStore(issuerId);
+        SigningKeyStore countingKeyStore = entityId -> {
+            keyStoreReads.incrementAndGet();
+            return keyStore.getVerifyingKeysForEntity(entityId);
+        };
+        CredentialFactorySignatureValidator validator = new CredentialFactorySignatureValidator(
+                new SigningCredentialFactory(countingKeyStore), SignatureAlgorithmPolicy.defaultPolicy(), null, Duration.ofMinutes(1));
+        DateTime now = DateTime.now();
+
+        try {
+            DateTimeFreezer.freezeTime(now);
+            validator.getTrustEngine(issuerId);
+            validator.getTrustEngine(issuerId);
+            assertThat(keyStoreReads.get()).isEqualTo(1);
+
+            validator.invalidate(issuerId);
+            validator.getTrustEngine(issuerId);
+            assertThat(keyStoreReads.get()).isEqualTo(2);
+
+            DateTimeFreezer.freezeTime(now.plusMinutes(2));
+            validator.getTrustEngine(issuerId);
+            assertThat(keyStoreReads.get()).isEqualTo(3);
+        } finally {
+            DateTimeFreezer.unfreezeTime();
+        }
+    }
+
+    @Test
+    public void shouldReadTheKeyStoreOncePerValidationWhenCachingVerdicts() throws Exception {
+        AtomicInteger keyStoreReads = new AtomicInteger();
+        HardCodedKeyStore keyStore = new HardCodedKeyStore(issuerId);
+        SigningKeyStore countingKeyStore = entityId -> {
+            keyStoreReads.incrementAndGet();
+            return keyStore.getVerifyingKeysForEntity(entityId);
+        };
+        CredentialFactorySignatureValidator validator = new CredentialFactorySignatureValidator(
+                new SigningCredentialFactory(countingKeyStore), SignatureAlgorithmPolicy.defaultPolicy(),
+                new VerifiedSignatureCache(100, Duration.ofMinutes(5)), Duration.ZERO);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+
+        assertThat(validator.validate(assertion, issuerId, null)).isEqualTo(true);
+
+        assertThat(keyStoreReads.get()).isEqualTo(1);
+    }
+
     /*
      * Signature algorithm should be valid.
      */
@@ -0,0 +1,106 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.collect.ImmutableList;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.EncryptedElementTypeEncryptedKeyResolver;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.encryption.EncryptedKey;
+import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.keyinfo.impl.BasicKeyInfoGeneratorFactory;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.security.saml.OpenSAMLRunner;
+
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+
+@RunWith(OpenSAMLRunner.class)
+public class DecryptionKeyInfoCredentialResolverTest {
+
+    private final Credential oldKey = getPrivateKeyFor(TestEntityIds.TEST_RP);
+    private final Credential newKey = getPrivateKeyFor(TestEntityIds.HUB_ENTITY_ID);
+    private final DecryptionKeyInfoCredentialResolver resolver = new DecryptionKeyInfoCredentialResolver(ImmutableList.of(oldKey, newKey));
+    private final CountingDecrypter decrypter = new CountingDecrypter(resolver);
+
+    @Test
+    public void shouldOnlyTryTheKeyNamedInTheKeyInfoOfTheEncryptedKey() throws Exception {
+        EncryptedAssertion encryptedAssertion = encrypt(newKey, true);
+
+        assertThat(decrypter.decrypt(encryptedAssertion).getID()).isEqualTo("assertion-id");
+        assertThat(decrypter.attempts).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldTryTheKeyThatLastWorkedFirstWhenThereIsNoHint() throws Exception {
+        assertThat(decrypter.decrypt(encrypt(newKey, false)).getID()).isEqualTo("assertion-id");
+        assertThat(decrypter.attempts).isEqualTo(2);
+
+        assertThat(decrypter.decrypt(encrypt(newKey, false)).getID()).isEqualTo("assertion-id");
+        assertThat(decrypter.attempts).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldTryEveryKeyWhenTheKeyInfoNamesAKeyWeDoNotHold() throws Exception {
+        KeyInfo keyInfo = (KeyInfo) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(KeyInfo.DEFAULT_ELEMENT_NAME).buildObject(KeyInfo.DEFAULT_ELEMENT_NAME);
+        KeyInfoSupport.addPublicKey(keyInfo, KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic());
+
+        assertThat(resolver.resolve(new CriteriaSet(new KeyInfoCriterion(keyInfo)))).containsExactly(oldKey, newKey);
+    }
+
+    private static EncryptedAssertion encrypt(Credential recipient, boolean withKeyInfo) throws Exception {
+        DataEncryptionParameters encParams = new DataEncryptionParameters();
+        encParams.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+        KeyEncryptionParameters kekParams = new KeyEncryptionParameters();
+        kekParams.setEncryptionCredential(new BasicCredential(recipient.getPublicKey()));
+        kekParams.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+        if (withKeyInfo) {
+            BasicKeyInfoGeneratorFactory keyInfoGeneratorFactory = new BasicKeyInfoGeneratorFactory();
+            keyInfoGeneratorFactory.setEmitPublicKeyValue(true);
+            kekParams.setKeyInfoGenerator(keyInfoGeneratorFactory.newInstance());
+        }
+        return new Encrypter(encParams, kekParams).encrypt(anAssertion().withId("assertion-id").buildUnencrypted());
+    }
+
+    private static Credential getPrivateKeyFor(final String entityId) {
+        String encryptionKey = TestCertificateStrings.PRIVATE_ENCRYPTION_KEYS.get(entityId).get(0);
+        PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(encryptionKey));
+        Credential publicKey = new KeyStoreBackedEncryptionCredentialResolver(new HardCodedKeyStore(entityId)).getEncryptingCredential(entityId);
+        return new BasicCredential(publicKey.getPublicKey(), privateKey);
+    }
+
+    private static class CountingDecrypter extends IdaDecrypter {
+        private int attempts;
+
+        private CountingDecrypter(DecryptionKeyInfoCredentialResolver resolver) {
+            super(null, resolver, new ChainingEncryptedKeyResolver(Arrays.asList(new EncryptedElementTypeEncryptedKeyResolver(), new InlineEncryptedKeyResolver())));
+        }
+
+        @Override
+        public Key decryptKey(EncryptedKey encryptedKey, String algorithm, Key kek) throws DecryptionException {
+            attempts++;
+            return super.decryptKey(encryptedKey, algorithm, kek);
+        }
+    }
+}
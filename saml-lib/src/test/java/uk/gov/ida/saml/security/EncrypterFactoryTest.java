@@ -0,0 +1,130 @@
+package uk.gov.ida.saml.security;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.saml.saml2.metadata.EncryptionMethod;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.security.impl.SAMLMDCredentialContext;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.security.saml.OpenSAMLRunner;
+import uk.gov.ida.saml.security.validators.encryptedelementtype.EncryptionAlgorithmValidator;
+
+import java.security.PrivateKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+
+@RunWith(OpenSAMLRunner.class)
+public class EncrypterFactoryTest {
+
+    @Test
+    public void shouldShareTheEncrypterForARecipientsKey() {
+        EncrypterFactory encrypterFactory = new EncrypterFactory();
+
+        Encrypter encrypter = encrypterFactory.createEncrypter(getCredential(TestEntityIds.HUB_ENTITY_ID));
+
+        assertThat(encrypterFactory.createEncrypter(getCredential(TestEntityIds.HUB_ENTITY_ID))).isSameAs(encrypter);
+        assertThat(encrypterFactory.createEncrypter(getCredential(TestEntityIds.TEST_RP))).isNotSameAs(encrypter);
+    }
+
+    @Test
+    public void shouldNotShareEncryptersAcrossAlgorithmsOrKeyPlacements() {
+        EncrypterFactory encrypterFactory = new EncrypterFactory();
+        Credential credential = getCredential(TestEntityIds.HUB_ENTITY_ID);
+        Encrypter encrypter = encrypterFactory.createEncrypter(credential);
+
+        Encrypter aes256Encrypter = encrypterFactory.withDataEncryptionAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256).createEncrypter(credential);
+        Encrypter inlineEncrypter = encrypterFactory.withKeyPlacement(Encrypter.KeyPlacement.INLINE).createEncrypter(credential);
+
+        assertThat(aes256Encrypter).isNotSameAs(encrypter);
+        assertThat(inlineEncrypter).isNotSameAs(encrypter).isNotSameAs(aes256Encrypter);
+    }
+
+    @Test
+    public void shouldCreateANewEncrypterEachTimeWhenNotCaching() {
+        EncrypterFactory encrypterFactory = new EncrypterFactory(0);
+        Credential credential = getCredential(TestEntityIds.HUB_ENTITY_ID);
+
+        assertThat(encrypterFactory.createEncrypter(credential)).isNotSameAs(encrypterFactory.createEncrypter(credential));
+    }
+
+    @Test
+    public void shouldEncryptEachAssertionWithANewKeyWhenShared() throws Exception {
+        EncrypterFactory encrypterFactory = new EncrypterFactory();
+        Assertion assertion = anAssertion().withId("assertion-id").buildUnencrypted();
+
+        EncryptedAssertion first = encrypterFactory.createEncrypter(getCredential(TestEntityIds.HUB_ENTITY_ID)).encrypt(assertion);
+        EncryptedAssertion second = encrypterFactory.createEncrypter(getCredential(TestEntityIds.HUB_ENTITY_ID)).encrypt(assertion);
+
+        assertThat(first.getEncryptedKeys().get(0).getCipherData().getCipherValue().getValue())
+                .isNotEqualTo(second.getEncryptedKeys().get(0).getCipherData().getCipherValue().getValue());
+        DecrypterFactory decrypterFactory = new DecrypterFactory();
+        assertThat(decrypterFactory.createDecrypter(ImmutableList.of(getPrivateKeyFor(TestEntityIds.HUB_ENTITY_ID))).decrypt(first).getID()).isEqualTo("assertion-id");
+        assertThat(decrypterFactory.createDecrypter(ImmutableList.of(getPrivateKeyFor(TestEntityIds.HUB_ENTITY_ID))).decrypt(second).getID()).isEqualTo("assertion-id");
+    }
+
+    @Test
+    public void shouldUseTheFirstNegotiableAlgorithmFromTheRecipientsMetadata() throws Exception {
+        EncrypterFactory encrypterFactory = new EncrypterFactory();
+        Credential credential = getCredentialWithEncryptionMethods(TestEntityIds.HUB_ENTITY_ID,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_TRIPLEDES,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM,
+                EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+
+        EncryptedAssertion encryptedAssertion = encrypterFactory.createEncrypter(credential).encrypt(anAssertion().withId("assertion-id").buildUnencrypted());
+
+        assertThat(encryptedAssertion.getEncryptedData().getEncryptionMethod().getAlgorithm()).isEqualTo(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM);
+        new EncryptionAlgorithmValidator().validate(encryptedAssertion);
+        assertThat(new DecrypterFactory().createDecrypter(ImmutableList.of(getPrivateKeyFor(TestEntityIds.HUB_ENTITY_ID))).decrypt(encryptedAssertion).getID()).isEqualTo("assertion-id");
+    }
+
+    @Test
+    public void shouldUseTheConfiguredAlgorithmWhenTheRecipientAsksForNoNegotiableAlgorithm() throws Exception {
+        Credential credential = getCredentialWithEncryptionMethods(TestEntityIds.HUB_ENTITY_ID, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM);
+        Assertion assertion = anAssertion().buildUnencrypted();
+
+        EncryptedAssertion notNegotiated = new EncrypterFactory().withNegotiableDataEncryptionAlgorithms(ImmutableSet.of())
+                .createEncrypter(credential).encrypt(assertion);
+        EncryptedAssertion withoutMetadata = new EncrypterFactory().withDataEncryptionAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM)
+                .createEncrypter(getCredential(TestEntityIds.HUB_ENTITY_ID)).encrypt(assertion);
+
+        assertThat(notNegotiated.getEncryptedData().getEncryptionMethod().getAlgorithm()).isEqualTo(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+        assertThat(withoutMetadata.getEncryptedData().getEncryptionMethod().getAlgorithm()).isEqualTo(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM);
+    }
+
+    private Credential getCredentialWithEncryptionMethods(final String entityId, String... algorithms) {
+        KeyDescriptor keyDescriptor = (KeyDescriptor) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(KeyDescriptor.DEFAULT_ELEMENT_NAME).buildObject(KeyDescriptor.DEFAULT_ELEMENT_NAME);
+        for (String algorithm : algorithms) {
+            EncryptionMethod encryptionMethod = (EncryptionMethod) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                    .getBuilder(EncryptionMethod.DEFAULT_ELEMENT_NAME).buildObject(EncryptionMethod.DEFAULT_ELEMENT_NAME);
+            encryptionMethod.setAlgorithm(algorithm);
+            keyDescriptor.getEncryptionMethods().add(encryptionMethod);
+        }
+        BasicCredential credential = new BasicCredential(getCredential(entityId).getPublicKey());
+        credential.getCredentialContextSet().add(new SAMLMDCredentialContext(keyDescriptor));
+        return credential;
+    }
+
+    private Credential getCredential(final String entityId) {
+        return new KeyStoreBackedEncryptionCredentialResolver(new HardCodedKeyStore(entityId)).getEncryptingCredential(entityId);
+    }
+
+    private Credential getPrivateKeyFor(final String entityId) {
+        String encryptionKey = TestCertificateStrings.PRIVATE_ENCRYPTION_KEYS.get(entityId).get(0);
+        PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(encryptionKey));
+        return new BasicCredential(getCredential(entityId).getPublicKey(), privateKey);
+    }
+}
@@ -2,6 +2,8 @@ package uk.gov.ida.saml.security;
 
 import net.shibboleth.utilities.java.support.xml.BasicParserPool;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opensaml.core.config.InitializationService;
@@ -11,6 +13,7 @@ import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.security.credential.Credential;
 import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import uk.gov.ida.saml.core.test.TestCertificateStrings;
@@ -26,17 +29,22 @@ import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static uk.gov.ida.saml.core.test.TestEntityIds.HUB_ENTITY_ID;
 import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_IDP_ONE;
 
 public class MetadataBackedEncryptionCredentialResolverTest {
     private MetadataCredentialResolver metadataCredentialResolver;
+    private StringBackedMetadataResolver metadataResolver;
 
     @Before
     public void beforeAll() throws Exception {
         InitializationService.initialize();
 
-        StringBackedMetadataResolver metadataResolver = new StringBackedMetadataResolver(loadMetadata());
+        metadataResolver = new StringBackedMetadataResolver(loadMetadata());
         BasicParserPool basicParserPool = new BasicParserPool();
         basicParserPool.initialize();
         metadataResolver.setParserPool(basicParserPool);
@@ -53,6 +61,11 @@ public class MetadataBackedEncryptionCredentialResolverTest {
         metadataCredentialResolver.initialize();
     }
 
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
     private String loadMetadata() {
         final SPSSODescriptor spssoDescriptor = SPSSODescriptorBuilder.anSpServiceDescriptor()
                 .addSupportedProtocol("urn:oasis:names:tc:SAML:2.0:protocol")
@@ -101,4 +114,40 @@ public class MetadataBackedEncryptionCredentialResolverTest {
         }).isExactlyInstanceOf(MetadataBackedEncryptionCredentialResolver.CredentialMissingInMetadataException.class)
           .hasMessage("No public key for entity-id: \""+ STUB_IDP_ONE + "\" could be found in the metadata. Metadata could be expired, invalid, or missing entities");
     }
+
+    @Test
+    public void shouldResolveEachReceiversCredentialOnceWhileMetadataIsUnchanged() throws Exception {
+        MetadataCredentialResolver credentialResolver = spy(metadataCredentialResolver);
+        MetadataBackedEncryptionCredentialResolver resolver = new MetadataBackedEncryptionCredentialResolver(credentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME, metadataResolver);
+
+        Credential first = resolver.getEncryptingCredential(HUB_ENTITY_ID);
+        Credential second = resolver.getEncryptingCredential(HUB_ENTITY_ID);
+
+        assertThat(second).isSameAs(first);
+        verify(credentialResolver, times(1)).resolveSingle(any());
+    }
+
+    @Test
+    public void shouldResolveCredentialAgainWhenMetadataIsUpdated() throws Exception {
+        MetadataCredentialResolver credentialResolver = spy(metadataCredentialResolver);
+        MetadataBackedEncryptionCredentialResolver resolver = new MetadataBackedEncryptionCredentialResolver(credentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME, metadataResolver);
+        Credential first = resolver.getEncryptingCredential(HUB_ENTITY_ID);
+
+        DateTimeUtils.setCurrentMillisFixed(DateTime.now().plusMinutes(1).getMillis());
+        metadataResolver.refresh();
+
+        assertThat(resolver.getEncryptingCredential(HUB_ENTITY_ID)).isNotSameAs(first);
+        verify(credentialResolver, times(2)).resolveSingle(any());
+    }
+
+    @Test
+    public void shouldNotUseCachedCredentialOnceMetadataHasExpired() {
+        MetadataBackedEncryptionCredentialResolver resolver = new MetadataBackedEncryptionCredentialResolver(metadataCredentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME, metadataResolver);
+        resolver.getEncryptingCredential(HUB_ENTITY_ID);
+
+        DateTimeUtils.setCurrentMillisFixed(DateTime.now().plusYears(101).getMillis());
+
+        assertThatThrownBy(() -> resolver.getEncryptingCredential(HUB_ENTITY_ID))
+                .isExactlyInstanceOf(MetadataBackedEncryptionCredentialResolver.CredentialMissingInMetadataException.class);
+    }
 }
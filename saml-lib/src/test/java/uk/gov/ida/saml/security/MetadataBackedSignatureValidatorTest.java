@@ -44,14 +44,20 @@ import uk.gov.ida.saml.security.saml.deserializers.SamlObjectParser;
 import uk.gov.ida.saml.security.saml.deserializers.StringToOpenSamlObjectTransformer;
 
 import java.net.URL;
+import java.security.PublicKey;
 import java.security.cert.CertPathValidatorException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(OpenSAMLMockitoRunner.class)
@@ -69,6 +75,63 @@ public class MetadataBackedSignatureValidatorTest {
         assertThat(metadataBackedSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(true);
     }
 
+    @Test
+    public void shouldServeRepeatedValidationFromTheVerifiedSignatureCache() throws Exception {
+        VerifiedSignatureCache verifiedSignatureCache = new VerifiedSignatureCache(100, Duration.ofMinutes(5));
+        StringBackedMetadataResolver metadataResolver = initialisedMetadataResolver(loadMetadata());
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = MetadataBackedSignatureValidator.withoutCertificateChainValidation(
+                new ExplicitKeySignatureTrustEngine(getMetadataCredentialResolver(metadataResolver), keyInfoResolver), verifiedSignatureCache, metadataResolver);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+
+        assertThat(metadataBackedSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(true);
+        assertThat(metadataBackedSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(true);
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotServeACachedVerdictOnceTheSignersChainIsRejectedAfterAMetadataUpdate() throws Exception {
+        VerifiedSignatureCache verifiedSignatureCache = new VerifiedSignatureCache(100, Duration.ofMinutes(5));
+        StringBackedMetadataResolver metadataResolver = initialisedMetadataResolver(loadMetadata());
+        CertificateChainValidator certificateChainValidator = createCertificateChainValidator(CertificateValidity.valid());
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = MetadataBackedSignatureValidator.withCertificateChainValidation(
+                new ExplicitKeySignatureTrustEngine(getMetadataCredentialResolver(metadataResolver), keyInfoResolver),
+                new CertificateChainEvaluableCriterion(certificateChainValidator, null),
+                verifiedSignatureCache,
+                metadataResolver);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+        assertThat(metadataBackedSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(true);
+
+        when(certificateChainValidator.validate(any(X509Certificate.class), eq(null))).thenReturn(CertificateValidity.invalid(new CertPathValidatorException()));
+        DateTimeFreezer.freezeTime(DateTime.now().plusMinutes(1));
+        try {
+            metadataResolver.refresh();
+            assertThat(metadataBackedSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(false);
+        } finally {
+            DateTimeFreezer.unfreezeTime();
+        }
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldResolveVerifyingKeysOncePerMetadataUpdate() throws Exception {
+        VerifiedSignatureCache verifiedSignatureCache = new VerifiedSignatureCache(100, Duration.ofMinutes(5));
+        StringBackedMetadataResolver metadataResolver = initialisedMetadataResolver(loadMetadata());
+        CertificateChainValidator certificateChainValidator = createCertificateChainValidator(CertificateValidity.valid());
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = MetadataBackedSignatureValidator.withCertificateChainValidation(
+                new ExplicitKeySignatureTrustEngine(getMetadataCredentialResolver(metadataResolver), keyInfoResolver),
+                new CertificateChainEvaluableCriterion(certificateChainValidator, null),
+                verifiedSignatureCache,
+                metadataResolver);
+
+        List<PublicKey> verifyingKeys = metadataBackedSignatureValidator.getVerifyingKeys(issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get();
+        clearInvocations(certificateChainValidator);
+
+        assertThat(metadataBackedSignatureValidator.getVerifyingKeys(issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME).get()).isSameAs(verifyingKeys);
+        verify(certificateChainValidator, never()).validate(any(X509Certificate.class), eq(null));
+    }
+
     @Test
     public void shouldFailIfCertificatesHaveTheWrongUsage() throws Exception {
         MetadataBackedSignatureValidator metadataBackedSignatureValidator = createMetadataBackedSignatureValidatorWithWrongUsageCertificates();
@@ -98,6 +161,37 @@ public class MetadataBackedSignatureValidatorTest {
         assertThat(validationResult).as("Assertion was expected to be invalid due to an invalid certificate chain").isEqualTo(false);
     }
 
+    @Test
+    public void shouldEvaluateCertificateChainsOnceForAllMessagesFromAnIssuer() throws Exception {
+        CertificateChainValidator certificateChainValidator = createCertificateChainValidator(CertificateValidity.valid());
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = createMetadataBackedSignatureValidatorWithChainValidation(certificateChainValidator);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        Credential badSigningCredential = new TestCredentialFactory(TestCertificateStrings.UNCHAINED_PUBLIC_CERT, TestCertificateStrings.UNCHAINED_PRIVATE_KEY).getSigningCredential();
+
+        SignatureValidator issuerSignatureValidator = metadataBackedSignatureValidator.forIssuer(issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        clearInvocations(certificateChainValidator);
+
+        for (int i = 0; i < 3; i++) {
+            final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+            assertThat(issuerSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(true);
+        }
+        final Assertion missignedAssertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(badSigningCredential).build()).build();
+        assertThat(issuerSignatureValidator.validate(missignedAssertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(false);
+        verify(certificateChainValidator, never()).validate(any(X509Certificate.class), eq(null));
+    }
+
+    @Test
+    public void shouldNotTrustAnyCredentialsForAnIssuerWhoseCertificatesDoNotChain() throws Exception {
+        CertificateChainValidator invalidCertificateChainMockValidator = createCertificateChainValidator(CertificateValidity.invalid(new CertPathValidatorException()));
+        MetadataBackedSignatureValidator metadataBackedSignatureValidator = createMetadataBackedSignatureValidatorWithChainValidation(invalidCertificateChainMockValidator);
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        final Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+
+        SignatureValidator issuerSignatureValidator = metadataBackedSignatureValidator.forIssuer(issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+        assertThat(issuerSignatureValidator.validate(assertion, issuerId, SPSSODescriptor.DEFAULT_ELEMENT_NAME)).isEqualTo(false);
+    }
+
     private Signature createSignatureWithKeyInfo(Credential signingCredential, String certificateString) {
         Signature signature = SignatureBuilder.aSignature().withSigningCredential(signingCredential).build();
         org.opensaml.xmlsec.signature.X509Certificate certificate = X509CertificateBuilder.aX509Certificate().withCert(certificateString).build();
@@ -150,7 +244,7 @@ public class MetadataBackedSignatureValidatorTest {
     }
 
     private ExplicitKeySignatureTrustEngine getExplicitKeySignatureTrustEngine() throws ComponentInitializationException {
-        StringBackedMetadataResolver metadataResolver = new StringBackedMetadataResolver(loadMetadata());
+        StringBackedMetadataResolver metadataResolver = initialisedMetadataResolver(loadMetadata());
         MetadataCredentialResolver metadataCredentialResolver = getMetadataCredentialResolver(metadataResolver);
         return new ExplicitKeySignatureTrustEngine(metadataCredentialResolver, keyInfoResolver);
     }
@@ -161,19 +255,23 @@ public class MetadataBackedSignatureValidatorTest {
         String metadataContainingWrongUsage = metadataFactory.metadata(
                 Collections.singletonList(entityDescriptorFactory.hubEntityDescriptorWithWrongUsageCertificates()));
 
-        StringBackedMetadataResolver metadataResolver = new StringBackedMetadataResolver(metadataContainingWrongUsage);
+        StringBackedMetadataResolver metadataResolver = initialisedMetadataResolver(metadataContainingWrongUsage);
         MetadataCredentialResolver metadataCredentialResolver = getMetadataCredentialResolver(metadataResolver);
         return new ExplicitKeySignatureTrustEngine(metadataCredentialResolver, keyInfoResolver);
     }
 
-    private MetadataCredentialResolver getMetadataCredentialResolver(StringBackedMetadataResolver metadataResolver) throws ComponentInitializationException {
+    private StringBackedMetadataResolver initialisedMetadataResolver(String metadata) throws ComponentInitializationException {
+        StringBackedMetadataResolver metadataResolver = new StringBackedMetadataResolver(metadata);
         BasicParserPool basicParserPool = new BasicParserPool();
         basicParserPool.initialize();
         metadataResolver.setParserPool(basicParserPool);
         metadataResolver.setRequireValidMetadata(true);
         metadataResolver.setId("arbitrary id");
         metadataResolver.initialize();
+        return metadataResolver;
+    }
 
+    private MetadataCredentialResolver getMetadataCredentialResolver(StringBackedMetadataResolver metadataResolver) throws ComponentInitializationException {
         PredicateRoleDescriptorResolver predicateRoleDescriptorResolver = new PredicateRoleDescriptorResolver(metadataResolver);
         predicateRoleDescriptorResolver.initialize();
 
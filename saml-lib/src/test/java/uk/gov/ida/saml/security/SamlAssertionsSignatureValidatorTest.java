@@ -13,9 +13,14 @@ import uk.gov.ida.saml.security.saml.OpenSAMLMockitoRunner;
 import uk.gov.ida.saml.security.saml.builders.AssertionBuilder;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Fail.fail;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
@@ -93,4 +98,64 @@ public class SamlAssertionsSignatureValidatorTest {
             assertThat(e.getMessage()).isEqualTo(expected);
         }
     }
+
+    @Test
+    public void shouldValidateAllAssertionsConcurrentlyOnTheExecutor() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SamlAssertionsSignatureValidator concurrentValidator = new SamlAssertionsSignatureValidator(samlMessageSignatureValidator, executor);
+            final Assertion assertion1 = AssertionBuilder.anAuthnStatementAssertion();
+            final Assertion assertion2 = AssertionBuilder.anAssertion().build();
+            final Assertion assertion3 = AssertionBuilder.anAssertion().build();
+
+            concurrentValidator.validate(asList(assertion1, assertion2, assertion3), IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+            verify(samlMessageSignatureValidator).validate(assertion1, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            verify(samlMessageSignatureValidator).validate(assertion2, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            verify(samlMessageSignatureValidator).validate(assertion3, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldReportTheFirstInvalidAssertionWhenValidatingConcurrently() {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = runnable -> {
+            submitted.incrementAndGet();
+            runnable.run();
+        };
+        SamlAssertionsSignatureValidator concurrentValidator = new SamlAssertionsSignatureValidator(samlMessageSignatureValidator, executor);
+        final Assertion goodAssertion = AssertionBuilder.anAuthnStatementAssertion();
+        final Assertion firstBadAssertion = AssertionBuilder.anAssertion().build();
+        final Assertion secondBadAssertion = AssertionBuilder.anAssertion().build();
+        doReturn(SamlValidationResponse.anInvalidResponse(invalidSignatureForAssertion("first"))).when(samlMessageSignatureValidator).validate(firstBadAssertion, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        doReturn(SamlValidationResponse.anInvalidResponse(invalidSignatureForAssertion("second"))).when(samlMessageSignatureValidator).validate(secondBadAssertion, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+        assertThatThrownBy(() -> concurrentValidator.validate(asList(goodAssertion, firstBadAssertion, secondBadAssertion), IDPSSODescriptor.DEFAULT_ELEMENT_NAME))
+                .isInstanceOf(SamlTransformationErrorException.class)
+                .hasMessageContaining("Signature for assertion first was not valid");
+        assertThat(submitted.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldValidateAssertionsSharingADocumentOneAtATime() {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = runnable -> {
+            submitted.incrementAndGet();
+            runnable.run();
+        };
+        SamlAssertionsSignatureValidator concurrentValidator = new SamlAssertionsSignatureValidator(samlMessageSignatureValidator, executor);
+        final Assertion assertion1 = AssertionBuilder.anAuthnStatementAssertion();
+        final Assertion assertion2 = AssertionBuilder.anAssertion().build();
+        assertion1.getDOM().getOwnerDocument().adoptNode(assertion2.getDOM());
+        doReturn(SamlValidationResponse.aValidResponse()).when(samlMessageSignatureValidator).validate(assertion1, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        doReturn(SamlValidationResponse.aValidResponse()).when(samlMessageSignatureValidator).validate(assertion2, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+        concurrentValidator.validate(asList(assertion1, assertion2), IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+        verify(samlMessageSignatureValidator).validate(assertion1, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        verify(samlMessageSignatureValidator).validate(assertion2, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        assertThat(submitted.get()).isEqualTo(0);
+    }
 }
@@ -1,5 +1,6 @@
 package uk.gov.ida.saml.security;
 
+import net.shibboleth.utilities.java.support.resolver.Criterion;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opensaml.saml.saml2.core.Assertion;
@@ -9,6 +10,8 @@ import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.security.credential.Credential;
+import org.opensaml.security.trust.TrustEngine;
+import org.opensaml.xmlsec.signature.Signature;
 import uk.gov.ida.saml.core.test.TestCertificateStrings;
 import uk.gov.ida.saml.core.test.TestEntityIds;
 import uk.gov.ida.saml.core.validation.SamlValidationResponse;
@@ -18,7 +21,16 @@ import uk.gov.ida.saml.security.saml.TestCredentialFactory;
 import uk.gov.ida.saml.security.saml.builders.AttributeQueryBuilder;
 import uk.gov.ida.saml.security.saml.builders.ResponseBuilder;
 
+import javax.xml.namespace.QName;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static uk.gov.ida.saml.security.saml.builders.AssertionBuilder.anAssertion;
 import static uk.gov.ida.saml.security.saml.builders.AuthnRequestBuilder.anAuthnRequest;
 import static uk.gov.ida.saml.security.saml.builders.IssuerBuilder.anIssuer;
@@ -130,4 +142,74 @@ public class SamlMessageSignatureValidatorTest {
         assertThat(signatureValidationResponse.isOK()).isFalse();
         assertThat(signatureValidationResponse.getErrorMessage()).isEqualTo(SamlTransformationErrorFactory.emptyIssuer().getErrorMessage());
     }
+
+    @Test
+    public void validateAllShouldReturnAResponseForEachMessageInOrder() {
+        Credential badCredential = new TestCredentialFactory(TestCertificateStrings.UNCHAINED_PUBLIC_CERT, TestCertificateStrings.UNCHAINED_PRIVATE_KEY).getSigningCredential();
+        final AuthnRequest signedAuthnRequest = anAuthnRequest().build();
+        final AuthnRequest badlySignedAuthnRequest = anAuthnRequest().withSigningCredential(badCredential).build();
+        final AuthnRequest authnRequestWithoutIssuer = anAuthnRequest().withIssuer(null).build();
+        final AttributeQuery signedAttributeQuery = AttributeQueryBuilder.anAttributeQuery().build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        List<SamlValidationResponse> signatureValidationResponses;
+        try {
+            signatureValidationResponses = samlMessageSignatureValidator.validateAll(
+                    asList(signedAuthnRequest, badlySignedAuthnRequest, authnRequestWithoutIssuer, signedAttributeQuery), SPSSODescriptor.DEFAULT_ELEMENT_NAME, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(signatureValidationResponses).extracting(SamlValidationResponse::isOK).containsExactly(true, false, false, true);
+        assertThat(signatureValidationResponses.get(1).getErrorMessage()).isEqualTo(SamlTransformationErrorFactory.invalidMessageSignature().getErrorMessage());
+        assertThat(signatureValidationResponses.get(2).getErrorMessage()).isEqualTo(SamlTransformationErrorFactory.missingIssuer().getErrorMessage());
+    }
+
+    @Test
+    public void validateAllShouldPrepareTheSignatureValidatorOncePerIssuer() throws Exception {
+        CredentialFactorySignatureValidator spySignatureValidator = spy(signatureValidator);
+        SamlMessageSignatureValidator batchValidator = new SamlMessageSignatureValidator(spySignatureValidator);
+        final Assertion testEntityAssertion = anAssertion().build();
+        final Assertion anotherTestEntityAssertion = anAssertion().build();
+        final Assertion hubAssertion = anAssertion().withIssuer(anIssuer().withIssuerId(issuerId).build()).build();
+
+        List<SamlValidationResponse> signatureValidationResponses = batchValidator.validateAll(asList(testEntityAssertion, hubAssertion, anotherTestEntityAssertion), IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+
+        assertThat(signatureValidationResponses).extracting(SamlValidationResponse::isOK).containsExactly(true, false, true);
+        verify(spySignatureValidator, times(1)).forIssuer(TestCertificateStrings.TEST_ENTITY_ID, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        verify(spySignatureValidator, times(1)).forIssuer(issuerId, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    @Test
+    public void validateAllShouldReturnAnInvalidResponseForAMessageThatCannotBeValidatedAndCarryOn() {
+        SignatureValidator failingForOneIssuer = new SignatureValidator() {
+            @Override
+            protected TrustEngine<Signature> getTrustEngine(String entityId) {
+                if (issuerId.equals(entityId)) {
+                    throw new IllegalStateException("Unresolvable issuer");
+                }
+                return signatureValidator.getTrustEngine(entityId);
+            }
+
+            @Override
+            protected List<Criterion> getAdditionalCriteria(String entityId, QName role) {
+                return signatureValidator.getAdditionalCriteria(entityId, role);
+            }
+        };
+        final Assertion testEntityAssertion = anAssertion().build();
+        final Assertion hubAssertion = anAssertion().withIssuer(anIssuer().withIssuerId(issuerId).build()).build();
+        final Assertion anotherTestEntityAssertion = anAssertion().build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        List<SamlValidationResponse> signatureValidationResponses;
+        try {
+            signatureValidationResponses = new SamlMessageSignatureValidator(failingForOneIssuer).validateAll(
+                    asList(testEntityAssertion, hubAssertion, anotherTestEntityAssertion), IDPSSODescriptor.DEFAULT_ELEMENT_NAME, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(signatureValidationResponses).extracting(SamlValidationResponse::isOK).containsExactly(true, false, true);
+        assertThat(signatureValidationResponses.get(1).getErrorMessage()).isEqualTo(SamlTransformationErrorFactory.unableToValidateMessageSignature().getErrorMessage());
+    }
 }
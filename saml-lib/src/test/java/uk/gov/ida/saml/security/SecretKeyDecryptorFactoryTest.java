@@ -2,9 +2,11 @@ package uk.gov.ida.saml.security;
 
 import com.google.common.collect.ImmutableList;
 import org.bouncycastle.util.encoders.Base64;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.opensaml.security.credential.Credential;
 import uk.gov.ida.saml.core.test.TestCertificateStrings;
@@ -19,7 +21,9 @@ import javax.crypto.SecretKey;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.time.Duration;
 
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,7 +36,6 @@ public class SecretKeyDecryptorFactoryTest {
             .getEncryptionKeyPair();
 
 
-    @InjectMocks
     private SecretKeyDecryptorFactory factory;
 
     @Mock
@@ -41,6 +44,16 @@ public class SecretKeyDecryptorFactoryTest {
     @Mock
     private Credential encryptionCredentials;
 
+    @Before
+    public void setUp() {
+        factory = new SecretKeyDecryptorFactory(idaKeyStoreCredentialRetriever);
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
     @Test
     public void shouldCreateDecreypterUsingPrivateKey() throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException {
         SecretKey secretKey = createSecretKey();
@@ -52,6 +65,51 @@ public class SecretKeyDecryptorFactoryTest {
         verify(encryptionCredentials).getPrivateKey();
     }
 
+    @Test
+    public void shouldUnwrapTheSameKeyOnceWhileItIsCached() throws Exception {
+        String encryptedSecretKey = encryptSecretKeyWithCredentialsPublicKey(createSecretKey());
+        when(idaKeyStoreCredentialRetriever.getDecryptingCredentials()).thenReturn(ImmutableList.of(encryptionCredentials));
+        when(encryptionCredentials.getPrivateKey()).thenReturn(credential.getPrivateKey());
+        DateTimeUtils.setCurrentMillisFixed(DateTimeUtils.currentTimeMillis());
+
+        factory.createDecrypter(encryptedSecretKey);
+        factory.createDecrypter(encryptedSecretKey);
+        verify(idaKeyStoreCredentialRetriever, times(1)).getDecryptingCredentials();
+
+        factory.createDecrypter(encryptSecretKeyWithCredentialsPublicKey(createSecretKey()));
+        verify(idaKeyStoreCredentialRetriever, times(2)).getDecryptingCredentials();
+
+        DateTimeUtils.setCurrentMillisFixed(DateTimeUtils.currentTimeMillis() + Duration.ofMinutes(1).toMillis());
+        factory.createDecrypter(encryptedSecretKey);
+        verify(idaKeyStoreCredentialRetriever, times(3)).getDecryptingCredentials();
+    }
+
+    @Test
+    public void shouldUnwrapTheKeyEveryTimeWhenNotCaching() throws Exception {
+        factory = new SecretKeyDecryptorFactory(idaKeyStoreCredentialRetriever, 0, Duration.ofMinutes(1));
+        String encryptedSecretKey = encryptSecretKeyWithCredentialsPublicKey(createSecretKey());
+        when(idaKeyStoreCredentialRetriever.getDecryptingCredentials()).thenReturn(ImmutableList.of(encryptionCredentials));
+        when(encryptionCredentials.getPrivateKey()).thenReturn(credential.getPrivateKey());
+
+        factory.createDecrypter(encryptedSecretKey);
+        factory.createDecrypter(encryptedSecretKey);
+
+        verify(idaKeyStoreCredentialRetriever, times(2)).getDecryptingCredentials();
+    }
+
+    @Test
+    public void shouldUnwrapAgainAfterTheCacheIsInvalidated() throws Exception {
+        String encryptedSecretKey = encryptSecretKeyWithCredentialsPublicKey(createSecretKey());
+        when(idaKeyStoreCredentialRetriever.getDecryptingCredentials()).thenReturn(ImmutableList.of(encryptionCredentials));
+        when(encryptionCredentials.getPrivateKey()).thenReturn(credential.getPrivateKey());
+
+        factory.createDecrypter(encryptedSecretKey);
+        factory.invalidateAll();
+        factory.createDecrypter(encryptedSecretKey);
+
+        verify(idaKeyStoreCredentialRetriever, times(2)).getDecryptingCredentials();
+    }
+
     private String encryptSecretKeyWithCredentialsPublicKey(SecretKey secretKey) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException {
         PublicKey publicKey = credential.getPublicKey();
         Cipher cipher = Cipher.getInstance(publicKey.getAlgorithm());
@@ -0,0 +1,29 @@
+package uk.gov.ida.saml.security;
+
+import org.junit.Test;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SignatureAlgorithmPolicyTest {
+
+    @Test
+    public void shouldWhitelistTheDefaultAlgorithmsByDefault() {
+        SignatureAlgorithmPolicy policy = SignatureAlgorithmPolicy.defaultPolicy();
+
+        assertThat(policy.getWhitelistedAlgorithms()).containsExactlyElementsOf(SignatureAlgorithmPolicy.DEFAULT_WHITELISTED_ALGORITHMS);
+        assertThat(policy.getSignatureValidationParametersCriterion().getSignatureValidationParameters().getWhitelistedAlgorithms())
+                .containsExactlyInAnyOrderElementsOf(SignatureAlgorithmPolicy.DEFAULT_WHITELISTED_ALGORITHMS);
+    }
+
+    @Test
+    public void shouldRemoveAlgorithmsFromAPolicy() {
+        SignatureAlgorithmPolicy policy = SignatureAlgorithmPolicy.defaultPolicy()
+                .without(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1, SignatureConstants.ALGO_ID_DIGEST_SHA1);
+
+        assertThat(policy.getWhitelistedAlgorithms())
+                .doesNotContain(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1, SignatureConstants.ALGO_ID_DIGEST_SHA1)
+                .contains(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256, SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        assertThat(SignatureAlgorithmPolicy.defaultPolicy().getWhitelistedAlgorithms()).contains(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1);
+    }
+}
@@ -0,0 +1,134 @@
+package uk.gov.ida.saml.security;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.test.TestCertificateStrings;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.security.saml.OpenSAMLMockitoRunner;
+import uk.gov.ida.saml.security.saml.TestCredentialFactory;
+import uk.gov.ida.saml.security.saml.builders.AssertionBuilder;
+import uk.gov.ida.saml.security.saml.builders.SignatureBuilder;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(OpenSAMLMockitoRunner.class)
+public class VerifiedSignatureCacheTest {
+
+    private static final String ISSUER_ID = TestEntityIds.HUB_ENTITY_ID;
+
+    private final PublicKeyFactory publicKeyFactory = new PublicKeyFactory(new X509CertificateFactory());
+    private final List<PublicKey> verifyingKeys = new ArrayList<>();
+    private final VerifiedSignatureCache verifiedSignatureCache = new VerifiedSignatureCache(100, Duration.ofMinutes(5));
+    private final CredentialFactorySignatureValidator signatureValidator = new CredentialFactorySignatureValidator(
+            new SigningCredentialFactory(entityId -> verifyingKeys), verifiedSignatureCache);
+
+    {
+        verifyingKeys.add(publicKeyFactory.createPublicKey(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT));
+    }
+
+    @After
+    public void unfreezeTime() {
+        DateTimeFreezer.unfreezeTime();
+    }
+
+    @Test
+    public void shouldServeRepeatedValidationOfTheSameSignatureFromTheCache() throws Exception {
+        Assertion assertion = aSignedAssertion();
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+
+        assertThat(verifiedSignatureCache.getMisses()).isEqualTo(1);
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotAcceptTamperedContentCarryingACachedSignature() throws Exception {
+        Assertion assertion = aSignedAssertion();
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+
+        assertion.getDOM().setAttributeNS(null, "Version", "1.0");
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isFalse();
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotReuseAVerdictOnceTheEntitysKeysChange() throws Exception {
+        Assertion assertion = aSignedAssertion();
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+
+        verifyingKeys.clear();
+        verifyingKeys.add(publicKeyFactory.createPublicKey(TestCertificateStrings.HUB_TEST_SECONDARY_PUBLIC_SIGNING_CERT));
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isFalse();
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldExpireVerdictsAfterTheirTimeToLive() throws Exception {
+        DateTime now = DateTime.now();
+        DateTimeFreezer.freezeTime(now);
+        Assertion assertion = aSignedAssertion();
+        signatureValidator.validate(assertion, ISSUER_ID, null);
+
+        DateTimeFreezer.freezeTime(now.plusMinutes(6));
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+        assertThat(verifiedSignatureCache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCacheInvalidSignatures() throws Exception {
+        Credential badSigningCredential = new TestCredentialFactory(TestCertificateStrings.UNCHAINED_PUBLIC_CERT, TestCertificateStrings.UNCHAINED_PRIVATE_KEY).getSigningCredential();
+        Assertion assertion = AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(badSigningCredential).build()).build();
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isFalse();
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isFalse();
+
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotLendAVerdictToAStricterValidatorSharingTheCache() throws Exception {
+        CredentialFactorySignatureValidator strictSignatureValidator = new CredentialFactorySignatureValidator(
+                new SigningCredentialFactory(entityId -> verifyingKeys),
+                SignatureAlgorithmPolicy.defaultPolicy().without(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256),
+                verifiedSignatureCache);
+        Assertion assertion = aSignedAssertion();
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+
+        assertThat(strictSignatureValidator.validate(assertion, ISSUER_ID, null)).isFalse();
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldValidateAsNormalAfterTheCacheIsInvalidated() throws Exception {
+        Assertion assertion = aSignedAssertion();
+        signatureValidator.validate(assertion, ISSUER_ID, null);
+
+        verifiedSignatureCache.invalidateAll();
+
+        assertThat(signatureValidator.validate(assertion, ISSUER_ID, null)).isTrue();
+        assertThat(verifiedSignatureCache.getHits()).isEqualTo(0);
+    }
+
+    private static Assertion aSignedAssertion() {
+        Credential signingCredential = new TestCredentialFactory(TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT, TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+        return AssertionBuilder.anAssertion().withSignature(SignatureBuilder.aSignature().withSigningCredential(signingCredential).build()).build();
+    }
+}
@@ -35,6 +35,14 @@ public class EncryptionAlgorithmValidatorTest {
         assertThatCode(() -> validator.validate(createOtherTypeOfEncryptedAssertion(encryptionAlgorithm, EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP))).doesNotThrowAnyException();
     }
 
+    @Test
+    public void validateShouldNotThrowSamlExceptionIfEncryptionAlgorithmIsAesGcm() {
+        for (String encryptionAlgorithm : ImmutableSet.of(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM)) {
+            assertThatCode(() -> validator.validate(createStandardEncryptedAssertion(encryptionAlgorithm, EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP, true))).doesNotThrowAnyException();
+            assertThatCode(() -> validator.validate(createOtherTypeOfEncryptedAssertion(encryptionAlgorithm, EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP))).doesNotThrowAnyException();
+        }
+    }
+
     @Test
     public void validateShouldNotThrowSamlExceptionIfEncryptionAlgorithmIsWhitelisted() {
         final String algoIdBlockcipherAes256 = EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256;